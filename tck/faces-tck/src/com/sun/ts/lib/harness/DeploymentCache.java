@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package com.sun.ts.lib.harness;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.sun.ts.lib.util.TestUtil;
+
+/**
+ * The test directories whose applications are kept deployed by the
+ * {@link SuiteSynchronizer}, least recently used first.
+ *
+ * Every entry records the SHA-256 hash of the archives and runtime files of
+ * the directory as they were deployed, and the client class path the
+ * deployment returned. Coming back to a directory whose hash is unchanged
+ * reuses its deployment; a changed hash means the applications must be
+ * redeployed. When more directories than the maximum size are cached, the
+ * least recently used ones are returned by {@link #put} to be undeployed.
+ *
+ * The cache can be saved to a file, so that the next run reuses the
+ * applications left deployed by this one. Entries loaded from the file are
+ * marked, since the server may have been restarted in between. Loaded entries
+ * beyond the maximum size are dropped and returned by {@link #takeDropped} to
+ * be undeployed.
+ */
+final class DeploymentCache {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final int maxSize;
+
+  private final File file;
+
+  // access ordered, the least recently used directory comes first
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+      16, 0.75f, true);
+
+  // directories dropped from the loaded cache, still to be undeployed
+  private final List<String> dropped = new ArrayList<String>();
+
+  /**
+   * @param maxSize
+   *          the number of directories kept deployed
+   * @param file
+   *          the file the cache is loaded from and saved to, or null
+   */
+  DeploymentCache(int maxSize, File file) {
+    this.maxSize = maxSize;
+    this.file = file;
+    load();
+  }
+
+  /**
+   * Returns the entry of the directory, marking it as the most recently used,
+   * or null if its applications are not cached.
+   */
+  synchronized Entry get(String sDir) {
+    return entries.get(sDir);
+  }
+
+  /**
+   * Records the deployment of the directory and returns the directories that
+   * no longer fit in the cache, whose applications should be undeployed.
+   */
+  synchronized List<String> put(String sDir, String sHash,
+      String sClientClassPath) {
+    entries.put(sDir, new Entry(sHash, sClientClassPath, false));
+    List<String> evicted = new ArrayList<String>();
+    trim(evicted);
+    return evicted;
+  }
+
+  /**
+   * Returns the directories left deployed by a previous run that did not fit
+   * in the cache when it was loaded, whose applications should be undeployed.
+   */
+  synchronized List<String> takeDropped() {
+    List<String> result = new ArrayList<String>(dropped);
+    dropped.clear();
+    return result;
+  }
+
+  synchronized void remove(String sDir) {
+    entries.remove(sDir);
+  }
+
+  /**
+   * Returns the cached directories, least recently used first.
+   */
+  synchronized List<String> getDirectories() {
+    return new ArrayList<String>(entries.keySet());
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Computes the hash of the given files of the directory, in name order.
+   */
+  static String hash(String sDir, String[] sFileNames) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    String[] sSorted = sFileNames == null ? new String[0]
+        : sFileNames.clone();
+    Arrays.sort(sSorted);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    for (int ii = 0; ii < sSorted.length; ii++) {
+      digest.update(sSorted[ii].getBytes("UTF-8"));
+      digest.update((byte) 0);
+      InputStream in = new BufferedInputStream(
+          new FileInputStream(new File(sDir, sSorted[ii])));
+      try {
+        for (int n; (n = in.read(buffer)) != -1;) {
+          digest.update(buffer, 0, n);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    StringBuffer sb = new StringBuffer();
+    byte[] bytes = digest.digest();
+    for (int ii = 0; ii < bytes.length; ii++) {
+      sb.append(Character.forDigit((bytes[ii] >> 4) & 0xf, 16))
+          .append(Character.forDigit(bytes[ii] & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the cache to its file, if it has one.
+   */
+  synchronized void save() {
+    if (file == null) {
+      return;
+    }
+    Properties props = new Properties();
+    int ii = 0;
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      // numbered to keep the order of use
+      props.setProperty(ii + ".dir", entry.getKey());
+      props.setProperty(ii + ".hash", entry.getValue().hash);
+      props.setProperty(ii + ".classpath", entry.getValue().clientClassPath);
+      ii++;
+    }
+    try {
+      file.getParentFile().mkdirs();
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+      try {
+        props.store(out, "Applications left deployed by the TS harness");
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      TestUtil.logHarness(
+          "Failed to save the deployment cache to " + file + ": " + e);
+    }
+  }
+
+  private void load() {
+    if (file == null || !file.isFile()) {
+      return;
+    }
+    Properties props = new Properties();
+    try {
+      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+        props.load(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      TestUtil.logHarness(
+          "Ignoring unreadable deployment cache " + file + ": " + e);
+      return;
+    }
+    for (int ii = 0; props.getProperty(ii + ".dir") != null; ii++) {
+      entries.put(props.getProperty(ii + ".dir"),
+          new Entry(props.getProperty(ii + ".hash", ""),
+              props.getProperty(ii + ".classpath", ""), true));
+    }
+    trim(dropped);
+    if (TestUtil.harnessDebug)
+      TestUtil.logHarnessDebug("Loaded " + entries.size()
+          + " deployed test directories from " + file);
+  }
+
+  // removes the least recently used directories beyond the maximum size
+  private void trim(List<String> removed) {
+    Iterator<String> it = entries.keySet().iterator();
+    while (entries.size() > maxSize) {
+      removed.add(it.next());
+      it.remove();
+    }
+  }
+
+  static final class Entry {
+    final String hash;
+
+    final String clientClassPath;
+
+    // loaded from the file saved by a previous run
+    final boolean fromPreviousRun;
+
+    Entry(String hash, String clientClassPath, boolean fromPreviousRun) {
+      this.hash = hash;
+      this.clientClassPath = clientClassPath;
+      this.fromPreviousRun = fromPreviousRun;
+    }
+  }
+}
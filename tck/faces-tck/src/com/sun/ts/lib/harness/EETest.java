@@ -24,6 +24,11 @@ import java.lang.reflect.*;
 import com.sun.javatest.Status;
 import com.sun.javatest.*;
 import java.lang.annotation.Annotation;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This abstract class must be extended by all clients of all J2EE-TS tests. All
@@ -67,6 +72,10 @@ public abstract class EETest implements Serializable {
 
   protected int iLogDelaySeconds;
 
+  // property holding the number of test cases run concurrently
+  // when all test cases of a class are run outside of JavaTest
+  public static final String PARALLEL_WORKERS = "harness.parallel.workers";
+
   // get the props from the args
   protected Properties getTestPropsFromArgs(String[] argv) {
     Properties p = new Properties();
@@ -367,6 +376,40 @@ public abstract class EETest implements Serializable {
       return Status
           .failed("An error occurred trying to get all" + "testcase methods.");
     }
+    Status[] statuses;
+    int iWorkers = getParallelWorkers(p);
+    if (iWorkers > 1 && sTestCases.length > 1) {
+      statuses = runTestCasesInParallel(sTestCases, iWorkers, argv, p, log,
+          err);
+    } else {
+      statuses = runTestCasesSequentially(sTestCases, argv, p, log, err);
+    }
+    for (int ii = 0; ii < sTestCases.length; ii++) {
+      if (statuses[ii].getType() == Status.PASSED) {
+        sTestCases[ii] += "...........PASSED";
+        iPassedCount++;
+      } else {
+        sTestCases[ii] += "...........FAILED";
+        iFailedCount++;
+      }
+    }
+    TestUtil.separator2();
+    TestUtil.logMsg("Completed running " + sTestCases.length + " tests.");
+    TestUtil.logMsg("Number of Tests Passed = " + iPassedCount);
+    TestUtil.logMsg("Number of Tests Failed = " + iFailedCount);
+    TestUtil.separator2();
+    for (int ii = 0; ii < sTestCases.length; ii++) {
+      TestUtil.logMsg(sTestCases[ii]);
+    }
+    if (iFailedCount > 0)
+      return Status.failed("FAILED");
+    else
+      return Status.passed("PASSED");
+  }
+
+  private Status[] runTestCasesSequentially(String[] sTestCases,
+      String[] argv, Properties p, PrintWriter log, PrintWriter err) {
+    Status[] statuses = new Status[sTestCases.length];
     for (int ii = 0; ii < sTestCases.length; ii++) {
       sTestCase = sTestCases[ii];
       p.setProperty("testName", sTestCase);
@@ -382,30 +425,140 @@ public abstract class EETest implements Serializable {
       } catch (InterruptedException e) {
         logErr("Exception: " + e);
       }
-      if (sTestStatus.getType() == Status.PASSED) {
-        sTestCases[ii] += "...........PASSED";
-        iPassedCount++;
-      } else {
+      if (sTestStatus.getType() != Status.PASSED) {
         TestUtil.logMsg(sTestStatus.getReason());
-        sTestCases[ii] += "...........FAILED";
-        iFailedCount++;
       }
+      statuses[ii] = sTestStatus;
       TestUtil.separator2();
-      TestUtil.logMsg("End Test:  " + sTestCases[ii]);
+      TestUtil.logMsg("End Test:  " + sTestCases[ii]
+          + (sTestStatus.getType() == Status.PASSED ? "...........PASSED"
+              : "...........FAILED"));
       TestUtil.separator2();
     }
-    TestUtil.separator2();
-    TestUtil.logMsg("Completed running " + sTestCases.length + " tests.");
-    TestUtil.logMsg("Number of Tests Passed = " + iPassedCount);
-    TestUtil.logMsg("Number of Tests Failed = " + iFailedCount);
-    TestUtil.separator2();
+    return statuses;
+  }
+
+  /**
+   * Runs the given test cases on a pool of worker threads. Every test case is
+   * run by its own instance of the test class, with its own copy of the
+   * properties, and logs into its own buffer. The buffer is written to the log
+   * stream as a whole once the test case completes, so the output of
+   * concurrent test cases is not interleaved.
+   */
+  private Status[] runTestCasesInParallel(final String[] sTestCases,
+      int iWorkers, final String[] argv, final Properties p,
+      final PrintWriter log, final PrintWriter err) {
+    final Status[] statuses = new Status[sTestCases.length];
+    TestUtil.setCurrentTest(null, log, err);
+    bUtilAlreadyInitialized = true;
+    TestUtil.logMsg("Running " + sTestCases.length + " tests using "
+        + iWorkers + " worker threads.");
+    ExecutorService executor = Executors.newFixedThreadPool(iWorkers,
+        new ThreadFactory() {
+          private int iCount = 0;
+
+          public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "EETest-worker-" + (++iCount));
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    List<Future<?>> futures = new ArrayList<Future<?>>();
     for (int ii = 0; ii < sTestCases.length; ii++) {
-      TestUtil.logMsg(sTestCases[ii]);
+      final int iIndex = ii;
+      futures.add(executor.submit(new Runnable() {
+        public void run() {
+          statuses[iIndex] = runIsolatedTestCase(sTestCases[iIndex], argv, p,
+              log);
+        }
+      }));
+    }
+    executor.shutdown();
+    for (int ii = 0; ii < futures.size(); ii++) {
+      try {
+        futures.get(ii).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        statuses[ii] = Status.failed("Interrupted while running test case: "
+            + sTestCases[ii]);
+      } catch (ExecutionException e) {
+        statuses[ii] = Status.failed(
+            "Unexpected Throwable: " + e.getCause());
+      }
+      if (statuses[ii] == null) {
+        statuses[ii] = Status.failed("Test case did not run: "
+            + sTestCases[ii]);
+      }
+    }
+    executor.shutdownNow();
+    // wait once for remote logging to complete
+    try {
+      Thread.sleep(iLogDelaySeconds);
+    } catch (InterruptedException e) {
+      logErr("Exception: " + e);
+    }
+    return statuses;
+  }
+
+  private Status runIsolatedTestCase(String sName, String[] argv,
+      Properties p, PrintWriter log) {
+    StringWriter buffer = new StringWriter();
+    PrintWriter testLog = new PrintWriter(buffer, true);
+    Status status;
+    TestUtil.setThreadLogStreams(testLog, testLog);
+    try {
+      TestUtil.separator2();
+      TestUtil.logMsg("Beginning Test:  " + sName);
+      TestUtil.separator2();
+      Properties testProps = (Properties) p.clone();
+      testProps.setProperty("testName", sName);
+      try {
+        EETest test = getClass().getDeclaredConstructor().newInstance();
+        test.iLogDelaySeconds = iLogDelaySeconds;
+        test.bUtilAlreadyInitialized = true;
+        test.sTestCase = sName;
+        status = test.getPropsReady(argv, testProps);
+      } catch (ThreadDeath t) {
+        throw t;
+      } catch (Throwable t) {
+        TestUtil.logErr("Could not create a test instance for: " + sName, t);
+        status = Status.failed("Could not create a test instance for: "
+            + sName + ": " + t);
+      }
+      if (status.getType() != Status.PASSED) {
+        TestUtil.logMsg(status.getReason());
+      }
+      TestUtil.separator2();
+      TestUtil.logMsg("End Test:  " + sName
+          + (status.getType() == Status.PASSED ? "...........PASSED"
+              : "...........FAILED"));
+      TestUtil.separator2();
+    } finally {
+      TestUtil.clearThreadLogStreams();
+      testLog.flush();
+      synchronized (log) {
+        log.print(buffer.toString());
+        log.flush();
+      }
+    }
+    return status;
+  }
+
+  /**
+   * Returns the number of worker threads used by runAllTestCases, as set by
+   * the "harness.parallel.workers" property. Test cases are run one after
+   * another unless the property is greater than one.
+   */
+  private int getParallelWorkers(Properties p) {
+    String sWorkers = p.getProperty(PARALLEL_WORKERS,
+        System.getProperty(PARALLEL_WORKERS, "1"));
+    try {
+      return Integer.parseInt(sWorkers.trim());
+    } catch (NumberFormatException e) {
+      TestUtil.logErr("Invalid value for " + PARALLEL_WORKERS + ": "
+          + sWorkers + ", running test cases sequentially");
+      return 1;
     }
-    if (iFailedCount > 0)
-      return Status.failed("FAILED");
-    else
-      return Status.passed("PASSED");
   }
 
   /**
@@ -643,6 +796,25 @@ public abstract class EETest implements Serializable {
     return sTestStatus;
   }
 
+  /**
+   * Returns the names of the test cases of this class that are not excluded,
+   * the way they are run when all test cases of the class are run, or an
+   * empty array if they cannot be determined.
+   *
+   * @param p
+   *          properties that are used by the testcase
+   * @return the names of the test cases
+   */
+  protected String[] getTestCaseNames(Properties p) {
+    try {
+      return getAllTestCases(p);
+    } catch (Exception e) {
+      TestUtil.logTrace("Unable to get the test cases of "
+          + getClass().getName() + ": " + e);
+      return new String[0];
+    }
+  }
+
   private String[] getAllTestCases(Properties p) throws SetupException {
     Vector tests = new Vector();
     String[] testMethods;
@@ -16,48 +16,205 @@
 
 package com.sun.ts.lib.harness;
 
-import java.util.Vector;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
-import java.io.PrintWriter;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 
+/**
+ * Exclude list used when tests are run outside of JavaTest.
+ *
+ * Each exclude list file is read once per VM and only read again when its
+ * modification time or length changes. The first token of each non comment
+ * line is an entry, which can be:
+ *
+ * <pre>
+ *   path/Client.java#testName_from_vehicle   excludes a single test
+ *   path/Client.java                         excludes every test of a class
+ *   path/*  or  path/Client.java#test*       excludes every test whose name
+ *                                            starts with the text before '*'
+ * </pre>
+ *
+ * Exact entries are looked up in a hash set; class and wildcard entries are
+ * stored in a prefix trie, so a lookup costs at most one pass over the test
+ * name regardless of the number of entries.
+ */
 public class ExcludeListProcessor {
 
   // pass in a string which has the filename#testname
   public static boolean isTestExcluded(String fileName) {
     // check to see if it exists in the exclude list
-    return fileNameList.contains(fileName);
+    for (ExcludeList list : excludeLists.values()) {
+      if (list.isExcluded(fileName)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   public static void readExcludeList(String fileName) {
+    if (fileName == null) {
+      return;
+    }
+    File file = new File(fileName);
+    synchronized (ExcludeListProcessor.class) {
+      ExcludeList current = excludeLists.get(fileName);
+      if (current != null && current.isCurrent(file)) {
+        return;
+      }
+      ExcludeList list = load(file);
+      if (list != null) {
+        Map<String, ExcludeList> lists = new LinkedHashMap<String, ExcludeList>(
+            excludeLists);
+        lists.put(fileName, list);
+        excludeLists = Collections.unmodifiableMap(lists);
+      }
+    }
+  }
+
+  private static ExcludeList load(File file) {
+    long lastModified = file.lastModified();
+    long length = file.length();
     BufferedReader d = null;
     try {
-      d = new BufferedReader(new FileReader(fileName));
+      d = new BufferedReader(new FileReader(file));
+      ExcludeList.Builder builder = new ExcludeList.Builder();
       String line;
       while ((line = d.readLine()) != null) {
         line = line.trim();
         if (line.length() > 0 && !line.startsWith("#")) {
-          String entry = new String(line);
-          fileNameList.addElement(entry.trim());
+          builder.add(new StringTokenizer(line).nextToken());
         }
       }
-      d.close();
+      return builder.build(lastModified, length);
     } catch (FileNotFoundException e) {
       System.out.println(e.toString());
       e.printStackTrace();
     } catch (IOException e) {
       System.out.println(e.toString());
       e.printStackTrace();
+    } finally {
+      if (d != null) {
+        try {
+          d.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
     }
+    return null;
   }
 
   /*----------- Private Members of this class -------------*/
-  private static Vector fileNameList = new Vector();
+  private static volatile Map<String, ExcludeList> excludeLists = Collections
+      .emptyMap();
+
+  /*
+   * Immutable contents of one exclude list file.
+   */
+  private static final class ExcludeList {
+
+    private final Set<String> exact;
+
+    private final PrefixNode prefixes;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private ExcludeList(Set<String> exact, PrefixNode prefixes,
+        long lastModified, long length) {
+      this.exact = exact;
+      this.prefixes = prefixes;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    boolean isExcluded(String testName) {
+      return exact.contains(testName) || prefixes.matches(testName);
+    }
 
+    static final class Builder {
+
+      private final Set<String> exact = new HashSet<String>();
+
+      private final PrefixNode prefixes = new PrefixNode();
+
+      void add(String entry) {
+        if (entry.endsWith("*")) {
+          prefixes.add(entry.substring(0, entry.length() - 1));
+        } else if (entry.indexOf('#') == -1) {
+          // a class or directory entry excludes all the tests it contains
+          exact.add(entry);
+          prefixes.add(entry.endsWith("/") ? entry : entry + "#");
+        } else {
+          exact.add(entry);
+        }
+      }
+
+      ExcludeList build(long lastModified, long length) {
+        return new ExcludeList(Collections.unmodifiableSet(exact), prefixes,
+            lastModified, length);
+      }
+    }
+  }
+
+  /*
+   * Character trie of prefix entries. Only modified while the owning
+   * ExcludeList is being built.
+   */
+  private static final class PrefixNode {
+
+    private Map<Character, PrefixNode> children = null;
+
+    private boolean terminal = false;
+
+    void add(String prefix) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        if (node.terminal) {
+          // a shorter prefix already covers this one
+          return;
+        }
+        if (node.children == null) {
+          node.children = new HashMap<Character, PrefixNode>(4);
+        }
+        Character c = Character.valueOf(prefix.charAt(i));
+        PrefixNode child = node.children.get(c);
+        if (child == null) {
+          child = new PrefixNode();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      node.terminal = true;
+      node.children = null;
+    }
+
+    boolean matches(String name) {
+      PrefixNode node = this;
+      for (int i = 0; !node.terminal; i++) {
+        if (i == name.length() || node.children == null) {
+          return false;
+        }
+        node = node.children.get(Character.valueOf(name.charAt(i)));
+        if (node == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
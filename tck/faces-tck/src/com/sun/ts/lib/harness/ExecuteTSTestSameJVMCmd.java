@@ -28,9 +28,18 @@ import java.lang.reflect.Method;
  * Allows the execution of CTS/TCK tests within the same JVM. This should only
  * be used for tests that can guarantee that running in such a configuration
  * will have no impact on the test results.
+ * <p>
+ * The test class and its run method are resolved once and reused while the
+ * same instance runs further tests of that class, which TSScript arranges for
+ * consecutive tests of one directory and vehicle.
  */
 public class ExecuteTSTestSameJVMCmd extends Command {
 
+  private static final Class[] RUN_ARGS = { String[].class, PrintWriter.class,
+      PrintWriter.class };
+
+  private volatile TestClass lastTestClass;
+
   public ExecuteTSTestSameJVMCmd() {
   }
 
@@ -67,11 +76,18 @@ public class ExecuteTSTestSameJVMCmd extends Command {
     Status status = null;
     System.out.println("CLASSNAME: " + className);
     try {
-      Class c;
-      if (loader == null) {
-        c = Class.forName(className);
-      } else {
-        c = loader.loadClass(className);
+      TestClass testClass = lastTestClass;
+      if (testClass == null || !testClass.name.equals(className)
+          || testClass.loader != loader) {
+        Class c;
+        if (loader == null) {
+          c = Class.forName(className);
+        } else {
+          c = loader.loadClass(className);
+        }
+        testClass = new TestClass(className, loader, c,
+            c.getMethod("run", RUN_ARGS));
+        lastTestClass = testClass;
       }
 
       Status prevStatus = null;
@@ -80,11 +96,8 @@ public class ExecuteTSTestSameJVMCmd extends Command {
           log.println("iteration: " + (j + 1));
         }
 
-        Object t = c.newInstance();
-        Class[] mainArgs = { Class.forName("[Ljava.lang.String;"),
-            PrintWriter.class, PrintWriter.class };
-
-        Method runMethod = c.getMethod("run", mainArgs);
+        Object t = testClass.c.newInstance();
+        Method runMethod = testClass.runMethod;
         Object[] execArgs = new Object[3];
         execArgs[0] = executeArgs;
         execArgs[1] = log;
@@ -131,4 +144,21 @@ public class ExecuteTSTestSameJVMCmd extends Command {
     }
     return status;
   }
+
+  private static final class TestClass {
+    final String name;
+
+    final ClassLoader loader;
+
+    final Class c;
+
+    final Method runMethod;
+
+    TestClass(String name, ClassLoader loader, Class c, Method runMethod) {
+      this.name = name;
+      this.loader = loader;
+      this.c = c;
+      this.runMethod = runMethod;
+    }
+  }
 }
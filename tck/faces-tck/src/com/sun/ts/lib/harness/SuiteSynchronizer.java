@@ -27,6 +27,12 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -112,6 +118,12 @@ public class SuiteSynchronizer {
 
   private static boolean bSupportsInterop = true;
 
+  // the test directories kept deployed, null if apps are undeployed as soon as
+  // another directory is run
+  private static DeploymentCache deploymentCache;
+
+  private static boolean bDeploymentCacheInitialized;
+
   public static final SuiteSynchronizer createSuiteSynchronizer(
       PrintWriter writer) {
     ss = new SuiteSynchronizer(writer);
@@ -342,6 +354,12 @@ public class SuiteSynchronizer {
     }
     // Now take care of the apps in the current test dir
     if (!Boolean.getBoolean("common.apps.only")
+        && !sLastTestDirectory.equals(testDir)
+        && getDeploymentCache() != null) {
+      // set the state so we can tell later if we are deploying common apps
+      bDeployingCommonApps = false;
+      deployCachedApps(testDir);
+    } else if (!Boolean.getBoolean("common.apps.only")
         && !sLastTestDirectory.equals(testDir)) {
       // set the state so we can tell later if we are deploying common apps
       bDeployingCommonApps = false;
@@ -387,25 +405,31 @@ public class SuiteSynchronizer {
         sClientClassesPath = deployApps(testDir) + File.pathSeparator;
         logOut.println("Deployed apps from - " + testDir);
         sLastTestDirectory = testDir;
-      } catch (TSDeploymentException de) {
-        sDeployStatus = "failed";
-        TestUtil
-            .logHarness("Deployment of app(s) from:  " + testDir + " failed!");
-        sDeployStackTrace = TestUtil.printStackTraceToString(de);
-        throw de;
       } catch (Throwable e) {
-        sDeployStatus = "failed";
-        TestUtil.logHarness(
-            "Exception:  Deployment of app(s) from:  " + testDir + " failed!");
-        e.printStackTrace(logOut);
-        sDeployStackTrace = TestUtil.printStackTraceToString(e);
-        throw new TSDeploymentException(
-            "Deployment of app(s) from:  " + testDir + " failed!", e);
+        throw deploymentFailed(testDir, e);
       }
     }
     sDeployStatus = "passed";
   }
 
+  /*
+   * Records the failed deployment of the apps in the directory and returns the
+   * exception to throw for it.
+   */
+  private TSDeploymentException deploymentFailed(String sDir, Throwable e) {
+    sDeployStatus = "failed";
+    sDeployStackTrace = TestUtil.printStackTraceToString(e);
+    if (e instanceof TSDeploymentException) {
+      TestUtil.logHarness("Deployment of app(s) from:  " + sDir + " failed!");
+      return (TSDeploymentException) e;
+    }
+    TestUtil.logHarness(
+        "Exception:  Deployment of app(s) from:  " + sDir + " failed!");
+    e.printStackTrace(logOut);
+    return new TSDeploymentException(
+        "Deployment of app(s) from:  " + sDir + " failed!", e);
+  }
+
   public void removeJmsConnectionFactories() throws TSJMSAdminException {
     // remove JMS connectionFactories
     try {
@@ -447,6 +471,10 @@ public class SuiteSynchronizer {
 
   public void undeployLastApp()
       throws TSDeploymentException, TSJMSAdminException {
+    if (getDeploymentCache() != null) {
+      undeployCachedApps();
+      return;
+    }
     try {
       if (!sLastTestDirectory.equals("none run yet")) {
         // undeploy the last app in the test run
@@ -466,6 +494,180 @@ public class SuiteSynchronizer {
     }
   }
 
+  /*
+   * Returns the cache of deployed test directories, or null if it is disabled
+   * because harness.deployment.cache.size is 0. The cache file of a previous
+   * run is loaded even if harness.deployment.cache.persist is now false, so
+   * that the apps it left deployed are reused and undeployed at the end of the
+   * run; those that don't fit in the cache are undeployed right away.
+   */
+  private DeploymentCache getDeploymentCache() {
+    if (!bDeploymentCacheInitialized) {
+      bDeploymentCacheInitialized = true;
+      int iSize = 0;
+      try {
+        iSize = Integer.parseInt(
+            jteMgr.getProperty("harness.deployment.cache.size", "0").trim());
+      } catch (NumberFormatException e) {
+        TestUtil.logHarness(
+            "Ignoring invalid harness.deployment.cache.size:  " + e);
+      }
+      File fCache = new File(
+          jteMgr.getProperty("harness.temp.directory",
+              System.getProperty("java.io.tmpdir")),
+          "deployment-cache.properties");
+      DeploymentCache cache = new DeploymentCache(Math.max(iSize, 0), fCache);
+      List<String> dropped = cache.takeDropped();
+      for (int ii = 0; ii < dropped.size(); ii++) {
+        try {
+          undeployApps(dropped.get(ii));
+          logOut.println("Undeployed apps left by the previous run from - "
+              + dropped.get(ii));
+        } catch (Exception e) {
+          TestUtil.logHarness("Undeployment of apps left by the previous run in "
+              + dropped.get(ii) + " failed:  " + e);
+        }
+      }
+      if (iSize > 0) {
+        deploymentCache = cache;
+      } else {
+        cache.clear();
+      }
+    }
+    return deploymentCache;
+  }
+
+  /*
+   * Deploys the apps of the directory unless they are still deployed
+   * unchanged, keeping the apps of the previous directories deployed as long
+   * as they fit in the cache.
+   */
+  private void deployCachedApps(String sDir) throws TSDeploymentException {
+    DeploymentCache cache = getDeploymentCache();
+    String sHash = null;
+    try {
+      File fDir = new File(sDir);
+      List<String> alFiles = new ArrayList<String>();
+      addIfListed(alFiles, fDir.list(ProfileHelper.ArchiveFilter.getInstance()));
+      addIfListed(alFiles, fDir.list(RuntimeInfoFilter.getInstance()));
+      sHash = DeploymentCache.hash(sDir,
+          alFiles.toArray(new String[alFiles.size()]));
+    } catch (IOException e) {
+      sDeployStatus = "failed";
+      sDeployStackTrace = TestUtil.printStackTraceToString(e);
+      throw new TSDeploymentException(
+          "Failed to read the archives in " + sDir, e);
+    }
+
+    DeploymentCache.Entry entry = cache.get(sDir);
+    if (entry != null && entry.hash.equals(sHash)
+        && (!entry.fromPreviousRun || isDeployed(sDir))) {
+      sClientClassesPath = entry.clientClassPath;
+      sLastTestDirectory = sDir;
+      logOut.println("Reusing deployed apps from - " + sDir);
+      return;
+    }
+
+    try {
+      // a changed directory is redeployed; otherwise undeploy just in case
+      undeployApps(sDir);
+      logOut.println("Undeployed apps from - " + sDir);
+      sClientClassesPath = deployApps(sDir) + File.pathSeparator;
+      logOut.println("Deployed apps from - " + sDir);
+      sLastTestDirectory = sDir;
+      List<String> evicted = cache.put(sDir, sHash, sClientClassesPath);
+      for (int ii = 0; ii < evicted.size(); ii++) {
+        undeployApps(evicted.get(ii));
+        logOut.println("Undeployed apps from - " + evicted.get(ii));
+      }
+    } catch (Throwable e) {
+      cache.remove(sDir);
+      throw deploymentFailed(sDir, e);
+    }
+  }
+
+  /*
+   * At the end of the run either leaves the cached apps deployed for the next
+   * run, or undeploys all of them.
+   */
+  private void undeployCachedApps()
+      throws TSDeploymentException, TSJMSAdminException {
+    DeploymentCache cache = getDeploymentCache();
+    // reset this string in case we're running the GUI and we rerun the same
+    // tests
+    sLastTestDirectory = "none run yet";
+    if (jteMgr.getProperty("harness.deployment.cache.persist", "false")
+        .equalsIgnoreCase("true")) {
+      cache.save();
+      logOut.println("Left the apps of " + cache.getDirectories().size()
+          + " test directories deployed for the next run");
+      return;
+    }
+    List<String> dirs = cache.getDirectories();
+    cache.clear();
+    for (int ii = 0; ii < dirs.size(); ii++) {
+      try {
+        undeployApps(dirs.get(ii));
+        logOut.println("Undeployed apps from - " + dirs.get(ii));
+      } catch (TSDeploymentException de) {
+        logOut.println("Undeployment of apps in " + dirs.get(ii) + " failed.");
+        throw de;
+      } catch (Exception e) {
+        logOut.println("Exception:  undeployment of apps in " + dirs.get(ii)
+            + " failed.");
+        throw new TSDeploymentException(
+            "Exception:  Undeployment of apps in " + dirs.get(ii) + " failed",
+            e);
+      }
+    }
+  }
+
+  /*
+   * Whether the apps of the directory, as left deployed by a previous run, are
+   * still deployed on server 1.
+   */
+  private boolean isDeployed(String sDir) {
+    String[] sAppJarsArray = ProfileHelper.getArchives(sDir,
+        sInteropDirectionWhenTablesWerePopulated);
+    if (sAppJarsArray == null || isInteropDir(sDir)) {
+      return false;
+    }
+    try {
+      TSDeploymentInterface ctsDeploy = (TSDeploymentInterface) htTSDeployers
+          .get("cts1");
+      for (int ii = 0; ii < sAppJarsArray.length; ii++) {
+        if (sAppJarsArray[ii].endsWith(".rar")
+            || sAppJarsArray[ii].indexOf("_j2ee2") != -1
+            || sAppJarsArray[ii].startsWith("vi_built_")) {
+          return false;
+        }
+        Properties props = new Properties();
+        props.putAll(pDeployProps);
+        props.setProperty("ear_file", sDir + File.separator + sAppJarsArray[ii]);
+        props.setProperty("deployment_host",
+            jteMgr.getProperty("deployment_host.1"));
+        props.setProperty("deployment_port",
+            jteMgr.getProperty("deployment_port.1"));
+        props.setProperty("deployment.props.number", "1");
+        if (!ctsDeploy.isDeployed(props)) {
+          return false;
+        }
+      }
+      return true;
+    } catch (Exception e) {
+      if (TestUtil.harnessDebug)
+        TestUtil.logHarnessDebug(
+            "Cannot tell whether the apps in " + sDir + " are deployed:  " + e);
+      return false;
+    }
+  }
+
+  private static void addIfListed(List<String> list, String[] sNames) {
+    if (sNames != null) {
+      list.addAll(Arrays.asList(sNames));
+    }
+  }
+
   private boolean isInteropDir(String sDir) {
     return (sDir.indexOf("interop") != -1);
   }
@@ -902,6 +1104,10 @@ public class SuiteSynchronizer {
       return "";
     }
     Arrays.sort(sAppJarsArray);
+    // the archives of a directory are deployed concurrently if configured and
+    // none of them is a connector the others could depend on
+    ExecutorService deployer = getParallelDeployer(sAppJarsArray);
+    List<Future<String>> deployments = new ArrayList<Future<String>>();
     // need to figure out the exact build rules for this
     for (int ii = 0; ii < sAppJarsArray.length; ii++) {
       earFile = sDir + File.separator + sAppJarsArray[ii];
@@ -1099,15 +1305,97 @@ public class SuiteSynchronizer {
           e.printStackTrace();
           throw e;
         }
+      } else if (deployer != null) {
+        deployments.add(deployer.submit(
+            new DeployTask(ctsDeploy, deploymentInfo, sAppJarsArray[ii])));
       } else {
         sClientClassPaths += ctsDeploy.deploy(deploymentInfo);
         if (!sClientClassPaths.endsWith(File.pathSeparator))
           sClientClassPaths += File.pathSeparator;
       }
     }
+    if (deployer != null) {
+      // lets the submitted deployments complete
+      deployer.shutdown();
+    }
+    // add the client class paths in archive order
+    for (int ii = 0; ii < deployments.size(); ii++) {
+      sClientClassPaths += getDeployResult(deployments.get(ii));
+      if (!sClientClassPaths.endsWith(File.pathSeparator))
+        sClientClassPaths += File.pathSeparator;
+    }
     return sClientClassPaths;
   }
 
+  /*
+   * Returns a pool for deploying the archives concurrently, or null if they
+   * are deployed one after the other.
+   */
+  private ExecutorService getParallelDeployer(String[] sAppJarsArray) {
+    int iWorkers = 1;
+    try {
+      iWorkers = Integer.parseInt(jteMgr
+          .getProperty("harness.deployment.parallel.workers", "1").trim());
+    } catch (NumberFormatException e) {
+      TestUtil.logHarness(
+          "Ignoring invalid harness.deployment.parallel.workers:  " + e);
+    }
+    if (iWorkers <= 1 || sAppJarsArray.length <= 1) {
+      return null;
+    }
+    for (int ii = 0; ii < sAppJarsArray.length; ii++) {
+      if (sAppJarsArray[ii].endsWith(".rar")) {
+        return null;
+      }
+    }
+    // daemon threads, so a pool left behind by a failed deployment doesn't
+    // keep the VM alive
+    return Executors.newFixedThreadPool(
+        Math.min(iWorkers, sAppJarsArray.length), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SuiteSynchronizer deployer");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+  }
+
+  private String getDeployResult(Future<String> deployment)
+      throws TSDeploymentException {
+    try {
+      return deployment.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof TSDeploymentException) {
+        throw (TSDeploymentException) e.getCause();
+      }
+      throw new TSDeploymentException("Deployment failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TSDeploymentException("Interrupted while deploying", e);
+    }
+  }
+
+  private static final class DeployTask implements Callable<String> {
+    private final TSDeploymentInterface ctsDeploy;
+
+    private final DeploymentInfo deploymentInfo;
+
+    private final String sAppJar;
+
+    DeployTask(TSDeploymentInterface ctsDeploy, DeploymentInfo deploymentInfo,
+        String sAppJar) {
+      this.ctsDeploy = ctsDeploy;
+      this.deploymentInfo = deploymentInfo;
+      this.sAppJar = sAppJar;
+    }
+
+    public String call() throws TSDeploymentException {
+      if (TestUtil.harnessDebug)
+        TestUtil.logHarnessDebug("Deploying concurrently:  " + sAppJar);
+      return ctsDeploy.deploy(deploymentInfo);
+    }
+  }
+
   private void undeployApps(String sDir)
       throws TSDeploymentException, TSJMSAdminException {
     if (executionMode == ExecutionMode.DEPLOY_RUN_UNDEPLOY
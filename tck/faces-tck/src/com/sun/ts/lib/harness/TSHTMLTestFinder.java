@@ -27,10 +27,60 @@ import com.sun.ts.lib.util.TestUtil;
  * designed specific for jaxp/api/xml_schema tests. If applied to other test
  * directories, at least change the executeClass and testDir value.
  *
+ * What is found in each file is kept in a {@link TestFinderIndex}, so files
+ * that did not change since the last run are not parsed again.
+ *
  * @created November 1, 2002
  */
 public class TSHTMLTestFinder extends HTMLTestFinder {
+  private final TestFinderIndex index = TestFinderIndex
+      .getInstance(TSHTMLTestFinder.class);
+
+  // record of the file being parsed, if any
+  private TestFinderIndex.Record record;
+
+  protected void scanFile(File file) {
+    TestFinderIndex.Record cached = index == null ? null : index.lookup(file);
+    if (cached != null) {
+      for (TestFinderIndex.Event event : cached.getEvents()) {
+        if (event.getFile() != null) {
+          foundFile(event.getFile());
+        } else {
+          foundTestDescription(event.getEntries(), file, event.getLine());
+        }
+      }
+      return;
+    }
+    if (index != null) {
+      try {
+        long lastModified = file.lastModified();
+        record = new TestFinderIndex.Record(file, lastModified,
+            TestFinderIndex.read(file));
+      } catch (IOException e) {
+        // let the superclass report the problem
+      }
+    }
+    try {
+      super.scanFile(file);
+      if (record != null) {
+        index.put(record);
+      }
+    } finally {
+      record = null;
+    }
+  }
+
+  protected void foundFile(File newFile) {
+    if (record != null) {
+      record.addFile(newFile);
+    }
+    super.foundFile(newFile);
+  }
+
   public void foundTestDescription(Map entries, File file, int line) {
+    if (record != null) {
+      record.addTestDescription(entries, line);
+    }
     VehicleVerifier vehicleVerifier = VehicleVerifier.getInstance(file);
     String[] vehicles = vehicleVerifier.getVehicleSet();
     for (int i = 0; i < vehicles.length; i++) {
@@ -69,6 +69,39 @@ public class TSScript extends com.sun.javatest.Script {
     bUseSameJVMCommand = Boolean.getBoolean("same.jvm");
   }
 
+  // Commands, classpaths and the test property file are resolved once and
+  // reused by the following tests; -Dno.command.cache=true turns this off.
+  private static final boolean bCacheCommands = !Boolean
+      .getBoolean("no.command.cache");
+
+  // command.<key> entries already looked up in each environment
+  private static final Map<TestEnvironment, Map<String, String[]>> commandCache = new WeakHashMap<TestEnvironment, Map<String, String[]>>();
+
+  // formatPath results keyed by direction, dist directory and classpath
+  private static final Map<String, String> formattedPaths = new LinkedHashMap<String, String>(
+      64, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > 256;
+    }
+  };
+
+  private static final Map<String, Class> commandClasses = new HashMap<String, Class>();
+
+  // in same JVM mode consecutive tests of one directory and vehicle share a
+  // single command instance, which keeps the test class it resolved
+  private static Command sameJVMCommand;
+
+  private static String sameJVMCommandKey;
+
+  // properties last written to tstest.jte
+  private static Properties lastTestProps;
+
+  private static String lastTestJteFile;
+
+  private static long lastTestJteModified;
+
   public Status run(String[] args, TestDescription td, TestEnvironment env) {
 
     pTestProps = new java.util.Properties();
@@ -620,20 +653,36 @@ public class TSScript extends com.sun.javatest.Script {
     }
     FileOutputStream propsOut = null;
     String sJteFile = sTestDir + File.separator + "tstest.jte";
-    try {
-      propsOut = new FileOutputStream(sJteFile);
-      p.store(propsOut, null);
-      return sJteFile;
-    } catch (Exception e) {
-      if (TestUtil.harnessDebug) {
-        TestUtil.logHarnessDebug(
-            "createTestPropertyFile:  An exception was thrown while trying to create the test property file");
+    File fJteFile = new File(sJteFile);
+    synchronized (TSScript.class) {
+      // tests of the same directory usually get identical properties, so
+      // only rewrite the file when they changed or the file was touched
+      if (bCacheCommands && p.equals(lastTestProps)
+          && sJteFile.equals(lastTestJteFile)
+          && fJteFile.lastModified() == lastTestJteModified) {
+        return sJteFile;
       }
-      e.printStackTrace(logOut);
-      throw e;
-    } finally {
-      if (propsOut != null) {
+      lastTestProps = null;
+      try {
+        propsOut = new FileOutputStream(fJteFile);
+        p.store(propsOut, null);
         propsOut.close();
+        propsOut = null;
+        lastTestProps = (Properties) p.clone();
+        lastTestJteFile = sJteFile;
+        lastTestJteModified = fJteFile.lastModified();
+        return sJteFile;
+      } catch (Exception e) {
+        if (TestUtil.harnessDebug) {
+          TestUtil.logHarnessDebug(
+              "createTestPropertyFile:  An exception was thrown while trying to create the test property file");
+        }
+        e.printStackTrace(logOut);
+        throw e;
+      } finally {
+        if (propsOut != null) {
+          propsOut.close();
+        }
       }
     }
   }
@@ -643,6 +692,16 @@ public class TSScript extends com.sun.javatest.Script {
   }
 
   private String formatPath(String classpath) {
+    String key = null;
+    if (bCacheCommands) {
+      key = bIsRebuildableReverseTest + "|" + testDir + "|" + classpath;
+      synchronized (formattedPaths) {
+        String formatted = formattedPaths.get(key);
+        if (formatted != null) {
+          return formatted;
+        }
+      }
+    }
 
     if (bIsRebuildableReverseTest) {
       // replace classes with classes_vi_built
@@ -663,18 +722,80 @@ public class TSScript extends com.sun.javatest.Script {
       TestUtil.logHarness(
           "Failed to get additional classpath for the following dist directory:  "
               + testDir);
+      // try again for the next test
+      key = null;
     }
 
     if (isWindows()) {
-      return org.apache.tools.ant.Project.translatePath(classpath);
+      classpath = org.apache.tools.ant.Project.translatePath(classpath);
+    }
+    if (key != null) {
+      synchronized (formattedPaths) {
+        formattedPaths.put(key, classpath);
+      }
     }
     return classpath;
   }
 
+  // Returns a copy of the command.<key> entry of the current environment,
+  // which the caller is free to modify.
+  private String[] lookupCommand(String key) throws TestEnvironment.Fault {
+    if (!bCacheCommands) {
+      return env.lookup("command." + key);
+    }
+    String[] command;
+    synchronized (commandCache) {
+      Map<String, String[]> commands = commandCache.get(env);
+      if (commands == null) {
+        commands = new HashMap<String, String[]>();
+        commandCache.put(env, commands);
+      }
+      command = commands.get(key);
+      if (command == null) {
+        command = env.lookup("command." + key);
+        if (command == null) {
+          return null;
+        }
+        commands.put(key, command);
+      }
+    }
+    return (String[]) command.clone();
+  }
+
+  private Command getCommand(String className) throws ClassNotFoundException,
+      InstantiationException, IllegalAccessException {
+    Class c;
+    synchronized (commandClasses) {
+      c = commandClasses.get(className);
+    }
+    if (c == null) {
+      c = Class.forName(className);
+      if (bCacheCommands && Command.class.isAssignableFrom(c)) {
+        synchronized (commandClasses) {
+          commandClasses.put(className, c);
+        }
+      }
+    }
+    if (bCacheCommands && c == ExecuteTSTestSameJVMCmd.class) {
+      String key = testDir + "|" + sVehicle;
+      synchronized (TSScript.class) {
+        if (sameJVMCommand == null || !key.equals(sameJVMCommandKey)) {
+          sameJVMCommand = (Command) (c.newInstance());
+          sameJVMCommandKey = key;
+        } else if (TestUtil.harnessDebug) {
+          TestUtil.logHarnessDebug(
+              "Reusing same JVM command for tests in " + testDir);
+        }
+        return sameJVMCommand;
+      }
+    }
+    return (Command) (c.newInstance());
+  }
+
   protected Status invokeCommand(String key) {
     Status s = null;
     try {
-      String[] command = env.lookup("command." + key);
+      String[] command = lookupCommand(key);
       String sClassPathFromExecProps = pExecProps.getProperty("clientClasspath",
           sClientClassesPath);
       TestUtil
@@ -743,8 +864,7 @@ public class TSScript extends com.sun.javatest.Script {
     // says in the environment file:
     Command testCommand;
     try {
-      Class c = Class.forName(className);
-      testCommand = (Command) (c.newInstance());
+      testCommand = getCommand(className);
     } catch (ClassCastException e) {
       return Status.error("Can't run class `" + className
           + "': it does not implement interface " + Command.class.getName());
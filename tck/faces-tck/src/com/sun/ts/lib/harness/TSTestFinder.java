@@ -26,11 +26,13 @@ import com.sun.ts.lib.deliverable.PropertyManagerInterface;
 import com.sun.ts.lib.deliverable.DeliverableFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -45,6 +47,9 @@ import java.util.Enumeration;
  * A test description consists of a single block comment in Java files. A file
  * may contain multiple test descriptions.
  *
+ * The descriptions found in each file are kept in a {@link TestFinderIndex}
+ * so that unchanged files are not parsed again on later runs.
+ *
  * @author Vella Raman
  * @see com.sun.javatest.TestFinder
  * @see com.sun.javatest.finder.TagTestFinder
@@ -132,6 +137,9 @@ public class TSTestFinder extends TagTestFinder {
 
   public static Hashtable htTestNamesFound = new Hashtable();
 
+  private final TestFinderIndex index = TestFinderIndex
+      .getInstance(TSTestFinder.class);
+
   // ----------------------------------------------------------------
   // Constructors
 
@@ -255,6 +263,13 @@ public class TSTestFinder extends TagTestFinder {
       return;
     if (TestUtil.harnessDebug)
       TestUtil.logHarnessDebug("Scanning " + name);
+    TestFinderIndex.Record record = index == null ? null : index.lookup(file);
+    if (record != null) {
+      for (TestFinderIndex.Event event : record.getEvents()) {
+        foundTestDescription(event.getEntries(), file, event.getLine());
+      }
+      return;
+    }
     String sVal = null;
     String extn = name.substring(dot);
     Class csc = getClassForExtension(extn);
@@ -280,7 +295,15 @@ public class TSTestFinder extends TagTestFinder {
       return;
     }
     try {
-      cs.init(new BufferedReader(new FileReader(file)));
+      // the time is read first, so a change made while reading the file is
+      // still seen by the next lookup
+      long lastModified = file.lastModified();
+      byte[] content = TestFinderIndex.read(file);
+      if (index != null) {
+        record = new TestFinderIndex.Record(file, lastModified, content);
+      }
+      cs.init(new BufferedReader(
+          new InputStreamReader(new ByteArrayInputStream(content))));
       if (fastScan)
         cs.setFastScan(true);
       Map propTags = new Hashtable();
@@ -308,9 +331,16 @@ public class TSTestFinder extends TagTestFinder {
               myTagValues.put(KEY_CLASS_TEST_ARGS, sVal);
             }
           }
+          if (record != null) {
+            record.addTestDescription(myTagValues, 0);
+          }
           foundTestDescription(myTagValues, file, 0);
         }
       }
+      // only a file that was read completely is indexed
+      if (record != null) {
+        index.put(record);
+      }
     } catch (FileNotFoundException e) {
       String msgs = "can't find file " + file.getPath();
       e.printStackTrace();
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package com.sun.ts.lib.harness;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import com.sun.ts.lib.util.TestUtil;
+
+/**
+ * Persistent index of the test descriptions found in test source files, shared
+ * by the test finders of this package.
+ *
+ * For every scanned file the index keeps its modification time, length and
+ * CRC-32 together with what the finder found in it: the parsed tag entries of
+ * each test description and any further files to scan. A file whose
+ * modification time and length are unchanged, or whose content still has the
+ * same CRC-32, is not parsed again; the finder replays the recorded entries
+ * instead. The test descriptions themselves are still created by the finder,
+ * so changes to vehicle or keyword configuration take effect immediately.
+ *
+ * The index of each finder is loaded once per VM from
+ * <tt>$TS_HOME/tmp/&lt;finder&gt;.index</tt> and written back when the VM
+ * exits, or earlier when a finder calls {@link #save()}. Records of files
+ * that were deleted are dropped when the index is written. The location can be
+ * changed with the <tt>finder.index.dir</tt> system property, and the index
+ * can be disabled with <tt>-Dno.finder.index=true</tt>.
+ */
+final class TestFinderIndex {
+
+  static final String DISABLE_PROP = "no.finder.index";
+
+  static final String DIR_PROP = "finder.index.dir";
+
+  // bump when the parsing rules of a finder change
+  private static final int VERSION = 1;
+
+  private static final Map<String, TestFinderIndex> indexes = new HashMap<String, TestFinderIndex>();
+
+  private final String name;
+
+  private final File indexFile;
+
+  private final Map<String, Record> records = new ConcurrentHashMap<String, Record>();
+
+  private volatile boolean dirty = false;
+
+  private TestFinderIndex(String name, File indexFile) {
+    this.name = name;
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Returns the index of the given finder, loading it on first use. Returns
+   * null if the index has been disabled.
+   */
+  static synchronized TestFinderIndex getInstance(Class finderClass) {
+    if (Boolean.getBoolean(DISABLE_PROP)) {
+      return null;
+    }
+    String name = finderClass.getName();
+    TestFinderIndex index = indexes.get(name);
+    if (index == null) {
+      String dir = System.getProperty(DIR_PROP);
+      if (dir == null && TSTestFinder.TS_HOME != null) {
+        dir = TSTestFinder.TS_HOME + File.separator + "tmp";
+      }
+      File file = dir == null ? null
+          : new File(dir, finderClass.getSimpleName() + ".index");
+      index = new TestFinderIndex(name, file);
+      index.load();
+      indexes.put(name, index);
+      if (indexes.size() == 1) {
+        Runtime.getRuntime().addShutdownHook(new Thread("TestFinderIndex") {
+          public void run() {
+            saveAll();
+          }
+        });
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the record of the file if the file did not change since it was
+   * recorded, otherwise null.
+   */
+  Record lookup(File file) {
+    Record record = records.get(file.getAbsolutePath());
+    if (record == null) {
+      return null;
+    }
+    long lastModified = file.lastModified();
+    long length = file.length();
+    if (record.lastModified == lastModified && record.length == length) {
+      return record;
+    }
+    if (record.length == length) {
+      try {
+        if (record.crc == checksum(file)) {
+          // touched but not modified
+          record = record.withLastModified(lastModified);
+          records.put(record.path, record);
+          dirty = true;
+          return record;
+        }
+      } catch (IOException e) {
+        // fall through and let the finder report the problem
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds or replaces the record of a file.
+   */
+  void put(Record record) {
+    records.put(record.path, record);
+    dirty = true;
+  }
+
+  /**
+   * Drops the records of files that no longer exist, and writes the index if it
+   * changed since it was loaded or last saved.
+   */
+  synchronized void save() {
+    if (indexFile == null) {
+      return;
+    }
+    for (Iterator<String> i = records.keySet().iterator(); i.hasNext();) {
+      if (!new File(i.next()).isFile()) {
+        i.remove();
+        dirty = true;
+      }
+    }
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    File dir = indexFile.getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      TestUtil.logHarnessDebug("TestFinderIndex: cannot create " + dir);
+      return;
+    }
+    File tmp = new File(indexFile.getPath() + ".tmp");
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp)));
+      out.writeInt(VERSION);
+      out.writeUTF(name);
+      out.writeObject(new HashMap<String, Record>(records));
+      out.close();
+      out = null;
+      if (!tmp.renameTo(indexFile)) {
+        indexFile.delete();
+        tmp.renameTo(indexFile);
+      }
+      TestUtil.logHarnessDebug("TestFinderIndex: wrote " + records.size()
+          + " entries to " + indexFile);
+    } catch (IOException e) {
+      TestUtil.logHarnessDebug(
+          "TestFinderIndex: cannot write " + indexFile + ": " + e);
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Reads the whole file, returning its content.
+   */
+  static byte[] read(File file) throws IOException {
+    long length = file.length();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("file too large: " + file);
+    }
+    byte[] content = new byte[(int) length];
+    InputStream in = new FileInputStream(file);
+    try {
+      int off = 0;
+      int n;
+      while (off < content.length
+          && (n = in.read(content, off, content.length - off)) != -1) {
+        off += n;
+      }
+      if (off < content.length) {
+        byte[] shorter = new byte[off];
+        System.arraycopy(content, 0, shorter, 0, off);
+        content = shorter;
+      }
+    } finally {
+      in.close();
+    }
+    return content;
+  }
+
+  static long checksum(byte[] content) {
+    CRC32 crc = new CRC32();
+    crc.update(content, 0, content.length);
+    return crc.getValue();
+  }
+
+  private static long checksum(File file) throws IOException {
+    return checksum(read(file));
+  }
+
+  private static synchronized void saveAll() {
+    for (TestFinderIndex index : indexes.values()) {
+      index.save();
+    }
+  }
+
+  private void load() {
+    if (indexFile == null || !indexFile.isFile()) {
+      return;
+    }
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(
+          new BufferedInputStream(new FileInputStream(indexFile)));
+      if (in.readInt() != VERSION || !name.equals(in.readUTF())) {
+        TestUtil.logHarnessDebug("TestFinderIndex: ignoring " + indexFile);
+        return;
+      }
+      Map<String, Record> loaded = (Map<String, Record>) in.readObject();
+      records.putAll(loaded);
+      TestUtil.logHarnessDebug("TestFinderIndex: read " + loaded.size()
+          + " entries from " + indexFile);
+    } catch (Exception e) {
+      // a damaged or incompatible index is simply rebuilt
+      TestUtil.logHarnessDebug(
+          "TestFinderIndex: ignoring " + indexFile + ": " + e);
+      records.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * What a finder found when it scanned one file. Immutable once added to the
+   * index.
+   */
+  static final class Record implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String path;
+
+    final long lastModified;
+
+    final long length;
+
+    final long crc;
+
+    private final List<Event> events;
+
+    /**
+     * @param lastModified
+     *          the modification time of the file, read before its content so
+     *          that a change made while reading is not recorded as seen
+     */
+    Record(File file, long lastModified, byte[] content) {
+      this(file.getAbsolutePath(), lastModified, content.length,
+          checksum(content), new ArrayList<Event>());
+    }
+
+    private Record(String path, long lastModified, long length, long crc,
+        List<Event> events) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.crc = crc;
+      this.events = events;
+    }
+
+    void addTestDescription(Map entries, int line) {
+      events.add(new Event(new HashMap<String, String>(entries), line, null));
+    }
+
+    void addFile(File file) {
+      events.add(new Event(null, 0, file.getPath()));
+    }
+
+    List<Event> getEvents() {
+      return Collections.unmodifiableList(events);
+    }
+
+    private Record withLastModified(long time) {
+      return new Record(path, time, length, crc, events);
+    }
+  }
+
+  /**
+   * A test description or a file found in a scanned file.
+   */
+  static final class Event implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<String, String> entries;
+
+    private final int line;
+
+    private final String file;
+
+    private Event(HashMap<String, String> entries, int line, String file) {
+      this.entries = entries;
+      this.line = line;
+      this.file = file;
+    }
+
+    /**
+     * @return the tag entries of a test description, or null for a file
+     */
+    Map<String, String> getEntries() {
+      return entries;
+    }
+
+    int getLine() {
+      return line;
+    }
+
+    /**
+     * @return the file found, or null for a test description
+     */
+    File getFile() {
+      return file == null ? null : new File(file);
+    }
+  }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.lib.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP/1.1 client used by {@link WebUtil}, built on non-blocking socket
+ * channels.
+ * <p>
+ * Connections are kept open after a response whose end is delimited and whose
+ * server did not ask to close them, and are reused by the next requests to the
+ * same address and port. Status and header lines are found by scanning the
+ * received bytes, and chunked bodies are decoded as they are read. The client
+ * is tuned with the following system properties:
+ * </p>
+ * <ul>
+ * <li><tt>webutil.http.keepAlive</tt> - <tt>false</tt> closes the connection
+ * after every response (default <tt>true</tt>)</li>
+ * <li><tt>webutil.http.maxIdlePerHost</tt> - maximum number of idle
+ * connections kept per address and port (default <tt>4</tt>)</li>
+ * <li><tt>webutil.http.timeout</tt> - milliseconds to wait for the server to
+ * connect or to send data, <tt>0</tt> waits forever (default <tt>0</tt>)</li>
+ * </ul>
+ */
+final class NioHttpClient {
+
+  static final String KEEP_ALIVE_PROP = "webutil.http.keepAlive";
+
+  static final String MAX_IDLE_PROP = "webutil.http.maxIdlePerHost";
+
+  static final String TIMEOUT_PROP = "webutil.http.timeout";
+
+  static final boolean KEEP_ALIVE = !"false"
+      .equalsIgnoreCase(System.getProperty(KEEP_ALIVE_PROP, "true").trim());
+
+  private static final int MAX_IDLE = Integer.getInteger(MAX_IDLE_PROP, 4)
+      .intValue();
+
+  private static final int TIMEOUT = Integer.getInteger(TIMEOUT_PROP, 0)
+      .intValue();
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private static final int MAX_POOLED_BODY_SIZE = 1024 * 1024;
+
+  private static final String ENCODING = "ISO-8859-1";
+
+  // idle connections, by address and port
+  private static final Map<String, LinkedList<Connection>> IDLE = new HashMap<String, LinkedList<Connection>>();
+
+  /**
+   * Private constructor as all interaction with this class is static.
+   */
+  private NioHttpClient() {
+  }
+
+  /**
+   * Sends the request and returns its response, over an idle connection to the
+   * server if there is one. A request whose reused connection turns out to
+   * have been closed by the server is sent again on a new one, unless it is
+   * not idempotent and the server may have answered it.
+   *
+   * @param addr
+   *          address of the server
+   * @param port
+   *          port of the server
+   * @param request
+   *          the request, headers and body included
+   * @param head
+   *          whether the request is a HEAD request, whose response has no body
+   * @param idempotent
+   *          whether the request may be sent again
+   * @return the response
+   * @throws IOException
+   *           if the request could not be sent or its response read
+   */
+  static WebUtil.Response execute(InetAddress addr, int port, byte[] request,
+      boolean head, boolean idempotent) throws IOException {
+    String key = addr.getHostAddress() + ':' + port;
+    Connection c = checkout(key);
+    while (true) {
+      boolean reused = c != null;
+      if (c == null) {
+        c = new Connection(addr, port);
+      }
+      WebUtil.Response response;
+      try {
+        c.write(request);
+        response = c.readResponse(head);
+      } catch (IOException e) {
+        c.close();
+        if (!reused || !(idempotent || c.nothingRead())) {
+          throw e;
+        }
+        // closed by the server while it was idle
+        TestUtil.logTrace(
+            "[NioHttpClient] Sending the request again on a new connection: "
+                + e);
+        c = null;
+        continue;
+      }
+      if (c.reusable && KEEP_ALIVE) {
+        checkin(key, c);
+      } else {
+        c.close();
+      }
+      return response;
+    }
+  }
+
+  /**
+   * Closes the idle connections.
+   */
+  static void closeIdleConnections() {
+    List<Connection> connections = new ArrayList<Connection>();
+    synchronized (IDLE) {
+      for (Iterator<LinkedList<Connection>> it = IDLE.values().iterator(); it
+          .hasNext();) {
+        connections.addAll(it.next());
+      }
+      IDLE.clear();
+    }
+    for (int ii = 0; ii < connections.size(); ii++) {
+      connections.get(ii).close();
+    }
+  }
+
+  private static Connection checkout(String key) {
+    while (true) {
+      Connection c;
+      synchronized (IDLE) {
+        LinkedList<Connection> idle = IDLE.get(key);
+        if (idle == null || idle.isEmpty()) {
+          return null;
+        }
+        c = idle.removeLast();
+      }
+      if (c.isOpen()) {
+        return c;
+      }
+      c.close();
+    }
+  }
+
+  private static void checkin(String key, Connection c) {
+    Connection evicted = null;
+    synchronized (IDLE) {
+      LinkedList<Connection> idle = IDLE.get(key);
+      if (idle == null) {
+        idle = new LinkedList<Connection>();
+        IDLE.put(key, idle);
+      }
+      idle.addLast(c);
+      if (idle.size() > MAX_IDLE) {
+        evicted = idle.removeFirst();
+      }
+    }
+    if (evicted != null) {
+      evicted.close();
+    }
+  }
+
+  /**
+   * A connection to a server, read and written by one thread at a time.
+   */
+  private static final class Connection {
+
+    private final SocketChannel channel;
+
+    private final Selector selector;
+
+    private final SelectionKey key;
+
+    // received bytes not consumed yet, between position and limit
+    private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // body of the response being read
+    private byte[] body = new byte[BUFFER_SIZE];
+
+    private int bodyLength;
+
+    // bytes received since the last request was written
+    private long bytesRead;
+
+    // whether the connection can carry the next request
+    boolean reusable;
+
+    // what the headers of the response being read say about its body
+    private long contentLength;
+
+    private boolean chunked;
+
+    private boolean close;
+
+    private boolean keepAlive;
+
+    Connection(InetAddress addr, int port) throws IOException {
+      channel = SocketChannel.open();
+      try {
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().connect(new InetSocketAddress(addr, port), TIMEOUT);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, 0);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      in.flip();
+    }
+
+    /**
+     * Returns whether the connection is still open, the server having sent
+     * nothing while it was idle.
+     */
+    boolean isOpen() {
+      if (!channel.isOpen() || in.hasRemaining()) {
+        return false;
+      }
+      try {
+        in.clear();
+        int n = channel.read(in);
+        in.flip();
+        return n == 0;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    boolean nothingRead() {
+      return bytesRead == 0;
+    }
+
+    void write(byte[] request) throws IOException {
+      bytesRead = 0;
+      ByteBuffer out = ByteBuffer.wrap(request);
+      while (out.hasRemaining()) {
+        if (channel.write(out) == 0) {
+          await(SelectionKey.OP_WRITE);
+        }
+      }
+    }
+
+    /**
+     * Reads the next response. Informational responses are skipped.
+     */
+    WebUtil.Response readResponse(boolean head) throws IOException {
+      WebUtil.Response response = new WebUtil.Response();
+      int status = readStatusLine(response);
+      while (status >= 100 && status < 200) {
+        readHeaders(null);
+        status = readStatusLine(response);
+      }
+      readHeaders(response);
+
+      bodyLength = 0;
+      boolean delimited = true;
+      if (head || status == 204 || status == 304) {
+        // no body
+      } else if (chunked) {
+        readChunked();
+      } else if (contentLength >= 0) {
+        readBody(contentLength);
+      } else {
+        readToEnd();
+        delimited = false;
+      }
+
+      reusable = delimited && !close && (keepAlive
+          || !response.versionToken.equalsIgnoreCase("HTTP/1.0"));
+      response.content = toContent(body, bodyLength);
+      if (body.length > MAX_POOLED_BODY_SIZE) {
+        body = new byte[BUFFER_SIZE];
+      }
+      return response;
+    }
+
+    /**
+     * Reads the status line, skipping blank lines before it.
+     *
+     * @return the status code
+     */
+    private int readStatusLine(WebUtil.Response response) throws IOException {
+      String line;
+      do {
+        line = readLine();
+      } while (line.length() == 0);
+      TestUtil.logTrace("HEADER: " + line);
+      int sp = line.indexOf(' ');
+      int end = line.indexOf(' ', sp + 1);
+      if (sp > 0) {
+        response.versionToken = line.substring(0, sp);
+        response.statusToken = line.substring(sp + 1,
+            end < 0 ? line.length() : end);
+        try {
+          return Integer.parseInt(response.statusToken);
+        } catch (NumberFormatException e) {
+          // reported below
+        }
+      }
+      throw new IOException(
+          "[NioHttpClient] Invalid status line: '" + line + "'");
+    }
+
+    /**
+     * Reads the header lines up to the blank line ending them, recording the
+     * ones describing the body and the connection.
+     *
+     * @param response
+     *          the response to record the other headers in, or
+     *          <code>null</code> to skip the headers
+     */
+    private void readHeaders(WebUtil.Response response) throws IOException {
+      contentLength = -1;
+      chunked = false;
+      close = false;
+      keepAlive = false;
+      for (String line; (line = readLine()).length() != 0;) {
+        if (response == null) {
+          continue;
+        }
+        TestUtil.logTrace("HEADER: " + line);
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+          continue;
+        }
+        String value = line.substring(colon + 1).trim();
+        if (isHeader(line, colon, "Location")) {
+          response.location = value;
+        } else if (isHeader(line, colon, "Set-Cookie")) {
+          response.parseCookie(line);
+        } else if (isHeader(line, colon, "WWW-Authenticate")) {
+          response.authenticationRequested = true;
+        } else if (isHeader(line, colon, "Content-Length")) {
+          try {
+            contentLength = Long.parseLong(value);
+          } catch (NumberFormatException e) {
+            throw new IOException(
+                "[NioHttpClient] Invalid header: '" + line + "'");
+          }
+        } else if (isHeader(line, colon, "Transfer-Encoding")) {
+          chunked = !value.equalsIgnoreCase("identity");
+        } else if (isHeader(line, colon, "Connection")) {
+          close = close || hasToken(value, "close");
+          keepAlive = keepAlive || hasToken(value, "keep-alive");
+        }
+      }
+    }
+
+    /**
+     * Returns the next line without its line terminator, decoded one byte per
+     * character.
+     */
+    private String readLine() throws IOException {
+      int from = in.position();
+      while (true) {
+        byte[] bytes = in.array();
+        for (int ii = from, limit = in.limit(); ii < limit; ii++) {
+          if (bytes[ii] == '\n') {
+            int start = in.position();
+            int end = ii > start && bytes[ii - 1] == '\r' ? ii - 1 : ii;
+            in.position(ii + 1);
+            return new String(bytes, start, end - start, ENCODING);
+          }
+        }
+        if (in.remaining() >= MAX_LINE_LENGTH) {
+          throw new IOException("[NioHttpClient] Header line longer than "
+              + MAX_LINE_LENGTH + " bytes");
+        }
+        from = in.limit() - in.position();
+        if (fill() < 0) {
+          throw new EOFException(
+              "[NioHttpClient] Connection closed by the server");
+        }
+        from += in.position();
+      }
+    }
+
+    private void readChunked() throws IOException {
+      while (true) {
+        long size = readChunkSize();
+        if (size == 0) {
+          // trailers
+          while (readLine().length() != 0) {
+          }
+          return;
+        }
+        readBody(size);
+        if (readLine().length() != 0) {
+          throw new IOException("[NioHttpClient] Invalid chunk end");
+        }
+      }
+    }
+
+    /**
+     * Parses the hexadecimal size at the start of a chunk, ignoring the
+     * extensions following it.
+     */
+    private long readChunkSize() throws IOException {
+      String line = readLine();
+      long size = 0;
+      int ii = 0;
+      for (; ii < line.length(); ii++) {
+        int digit = Character.digit(line.charAt(ii), 16);
+        if (digit < 0) {
+          break;
+        }
+        size = size * 16 + digit;
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("[NioHttpClient] Chunk too large: " + line);
+        }
+      }
+      if (ii == 0) {
+        throw new IOException("[NioHttpClient] Invalid chunk size: '" + line
+            + "'");
+      }
+      return size;
+    }
+
+    private void readBody(long length) throws IOException {
+      ensureBodyCapacity(bodyLength + length);
+      while (length > 0) {
+        if (!in.hasRemaining() && fill() < 0) {
+          throw new EOFException("[NioHttpClient] Connection closed with "
+              + length + " bytes of the body left to read");
+        }
+        int n = (int) Math.min(length, in.remaining());
+        in.get(body, bodyLength, n);
+        bodyLength += n;
+        length -= n;
+      }
+    }
+
+    private void readToEnd() throws IOException {
+      do {
+        int n = in.remaining();
+        ensureBodyCapacity(bodyLength + n);
+        in.get(body, bodyLength, n);
+        bodyLength += n;
+      } while (fill() >= 0);
+    }
+
+    private void ensureBodyCapacity(long capacity) throws IOException {
+      if (capacity > Integer.MAX_VALUE - 8) {
+        throw new IOException("[NioHttpClient] Response body too large");
+      }
+      if (capacity > body.length) {
+        byte[] grown = new byte[(int) Math.min(Integer.MAX_VALUE - 8,
+            Math.max(capacity, body.length * 2L))];
+        System.arraycopy(body, 0, grown, 0, bodyLength);
+        body = grown;
+      }
+    }
+
+    /**
+     * Reads more bytes after those not consumed yet, waiting for the server to
+     * send them.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    private int fill() throws IOException {
+      if (in.position() > 0) {
+        in.compact();
+      } else {
+        in.position(in.limit());
+        in.limit(in.capacity());
+      }
+      if (!in.hasRemaining()) {
+        ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+        in.flip();
+        grown.put(in);
+        in = grown;
+      }
+      try {
+        while (true) {
+          int n = channel.read(in);
+          if (n != 0) {
+            if (n > 0) {
+              bytesRead += n;
+            }
+            return n;
+          }
+          await(SelectionKey.OP_READ);
+        }
+      } finally {
+        in.flip();
+      }
+    }
+
+    private void await(int op) throws IOException {
+      key.interestOps(op);
+      try {
+        if (selector.select(TIMEOUT) == 0 && TIMEOUT > 0) {
+          throw new SocketTimeoutException("[NioHttpClient] No data from "
+              + channel.socket().getRemoteSocketAddress() + " for " + TIMEOUT
+              + " ms");
+        }
+        selector.selectedKeys().clear();
+      } finally {
+        key.interestOps(0);
+      }
+    }
+
+    void close() {
+      try {
+        selector.close();
+      } catch (IOException e) {
+        // ignored
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static boolean isHeader(String line, int colon, String name) {
+    return colon == name.length() && line.regionMatches(true, 0, name, 0, colon);
+  }
+
+  private static boolean hasToken(String value, String token) {
+    String[] tokens = value.split(",");
+    for (int ii = 0; ii < tokens.length; ii++) {
+      if (tokens[ii].trim().equalsIgnoreCase(token)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decodes the body with the platform's default charset, ending every line
+   * with a new line character as WebUtil always did.
+   */
+  private static String toContent(byte[] body, int length) {
+    String s = new String(body, 0, length);
+    StringBuffer sb = new StringBuffer(s.length() + 1);
+    for (int ii = 0, n = s.length(); ii < n; ii++) {
+      char c = s.charAt(ii);
+      if (c == '\r') {
+        sb.append('\n');
+        if (ii + 1 < n && s.charAt(ii + 1) == '\n') {
+          ii++;
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+    if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
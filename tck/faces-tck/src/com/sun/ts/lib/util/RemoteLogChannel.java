@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package com.sun.ts.lib.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport used by remote VMs to send log output back to the harness.
+ *
+ * Log calls only append a record to a bounded ring buffer. A single writer
+ * thread drains the buffer and writes the records in batches, flushing the
+ * socket once per batch. Each record is written as a length prefixed frame:
+ *
+ * <pre>
+ *   int    frame length (not including this field)
+ *   byte   stream (TestUtil.OUTPUT_STREAM or TestUtil.ERROR_STREAM)
+ *   byte   level (TestUtil.DEBUG_OUTPUT_LEVEL or TestUtil.NORMAL_OUTPUT_LEVEL)
+ *   byte[] UTF-8 encoded message
+ * </pre>
+ *
+ * The stream starts with the {@link #MAGIC} header, so the harness can tell
+ * it from the serialized objects sent by older remote VMs.
+ *
+ * Records logged while no connection is available stay in the buffer and are
+ * sent once a connection is made. When the buffer is full the oldest records
+ * are dropped and a notice is sent in their place. If a connection fails
+ * partway through a batch, only the records that were not yet passed on to
+ * the socket are sent again on the next connection.
+ */
+final class RemoteLogChannel implements Runnable {
+
+  /**
+   * Header written at the start of every connection ("TSLG")
+   */
+  static final int MAGIC = 0x54534c47;
+
+  private static final int CAPACITY = Integer
+      .getInteger("harness.log.buffer.size", 8192).intValue();
+
+  private static final int MAX_BATCH = 512;
+
+  private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+  private final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(
+      CAPACITY);
+
+  // records queued or being written, used by flush()
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final AtomicInteger dropped = new AtomicInteger();
+
+  private Socket socket = null;
+
+  private DataOutputStream out = null;
+
+  // the socket end of out
+  private CountingOutputStream sent = null;
+
+  RemoteLogChannel() {
+    Thread writer = new Thread(this, "TestUtil-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queues a message to be sent to the harness. Never blocks on I/O.
+   */
+  void send(String message, int stream, int level) {
+    Record record = new Record(message, stream, level);
+    pending.incrementAndGet();
+    while (!queue.offer(record)) {
+      // buffer is full, make room by dropping the oldest record
+      if (queue.poll() != null) {
+        pending.decrementAndGet();
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Switches the channel to a new connection to the harness. Any previous
+   * connection is closed.
+   */
+  synchronized void connect(Socket s) throws IOException {
+    close();
+    CountingOutputStream cos = new CountingOutputStream(s.getOutputStream());
+    DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(cos, 8192));
+    dos.writeInt(MAGIC);
+    dos.flush();
+    socket = s;
+    out = dos;
+    sent = cos;
+    notifyAll();
+  }
+
+  /**
+   * Closes the current connection, if any. Queued records are kept.
+   */
+  synchronized void close() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+    socket = null;
+    out = null;
+    sent = null;
+  }
+
+  /**
+   * Waits until all queued records have been written, as long as the channel
+   * is connected.
+   */
+  synchronized void flush() {
+    long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+    while (pending.get() > 0 && out != null) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0) {
+        break;
+      }
+      try {
+        wait(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+  }
+
+  public void run() {
+    List<Record> batch = new ArrayList<Record>(MAX_BATCH);
+    // the byte count of the connection at the end of each written record
+    long[] ends = new long[MAX_BATCH];
+    while (true) {
+      try {
+        if (batch.isEmpty()) {
+          batch.add(queue.take());
+          queue.drainTo(batch, MAX_BATCH - 1);
+        }
+        DataOutputStream dos;
+        CountingOutputStream cos;
+        synchronized (this) {
+          dos = awaitConnection();
+          cos = sent;
+        }
+        // the previous batch was flushed, so every byte written so far has
+        // been passed on to the socket
+        long lEnd = cos.count;
+        long lNoticeEnd = -1;
+        int iWritten = 0;
+        // the count is only cleared once the notice has been written
+        int iDropped = dropped.get();
+        try {
+          if (iDropped > 0) {
+            lEnd += write(dos, new Record("SVR-ERROR: " + iDropped
+                + " log messages were dropped", TestUtil.ERROR_STREAM,
+                TestUtil.NORMAL_OUTPUT_LEVEL));
+            lNoticeEnd = lEnd;
+          }
+          for (; iWritten < batch.size(); iWritten++) {
+            lEnd += write(dos, batch.get(iWritten));
+            ends[iWritten] = lEnd;
+          }
+          dos.flush();
+          dropped.addAndGet(-iDropped);
+          removeSent(batch, batch.size());
+        } catch (IOException e) {
+          // the harness went away, keep the records that did not get through
+          // to the socket until we reconnect
+          if (lNoticeEnd != -1 && lNoticeEnd <= cos.count) {
+            dropped.addAndGet(-iDropped);
+          }
+          int iSent = 0;
+          while (iSent < iWritten && ends[iSent] <= cos.count) {
+            iSent++;
+          }
+          removeSent(batch, iSent);
+          synchronized (this) {
+            if (out == dos) {
+              close();
+            }
+            notifyAll();
+          }
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  // drops the first records of the batch, which have been sent
+  private synchronized void removeSent(List<Record> batch, int iSent) {
+    batch.subList(0, iSent).clear();
+    pending.addAndGet(-iSent);
+    notifyAll();
+  }
+
+  private synchronized DataOutputStream awaitConnection()
+      throws InterruptedException {
+    while (out == null) {
+      wait();
+    }
+    return out;
+  }
+
+  // returns the number of bytes written
+  private static int write(DataOutputStream dos, Record record)
+      throws IOException {
+    byte[] bytes = record.message.getBytes(StandardCharsets.UTF_8);
+    dos.writeInt(bytes.length + 2);
+    dos.writeByte(record.stream);
+    dos.writeByte(record.level);
+    dos.write(bytes);
+    return bytes.length + 6;
+  }
+
+  /**
+   * Reads the log output sent by a remote VM until the connection is closed,
+   * and passes it on to the harness logging methods of TestUtil.
+   *
+   * @return false, with the stream reset to where it was, if the stream does
+   *         not start with the {@link #MAGIC} header
+   */
+  static boolean read(BufferedInputStream bis) throws IOException {
+    DataInputStream dis = new DataInputStream(bis);
+    bis.mark(4);
+    int magic;
+    try {
+      magic = dis.readInt();
+    } catch (EOFException e) {
+      return true;
+    }
+    if (magic != MAGIC) {
+      bis.reset();
+      return false;
+    }
+    byte[] buffer = new byte[1024];
+    while (true) {
+      int length;
+      try {
+        length = dis.readInt();
+      } catch (EOFException e) {
+        return true;
+      }
+      int stream = dis.readByte();
+      int level = dis.readByte();
+      length -= 2;
+      if (length > buffer.length) {
+        buffer = new byte[Math.max(length, buffer.length * 2)];
+      }
+      dis.readFully(buffer, 0, length);
+      dispatch(new String(buffer, 0, length, StandardCharsets.UTF_8), stream,
+          level);
+    }
+  }
+
+  private static void dispatch(String message, int stream, int level) {
+    if (level == TestUtil.DEBUG_OUTPUT_LEVEL) {
+      TestUtil.logTrace(message);
+    } else if (stream == TestUtil.ERROR_STREAM) {
+      TestUtil.logErr(message);
+    } else {
+      // assume outputstream
+      TestUtil.logMsg(message);
+    }
+  }
+
+  // counts the bytes passed on to the socket
+  private static final class CountingOutputStream extends FilterOutputStream {
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  private static final class Record {
+    final String message;
+
+    final int stream;
+
+    final int level;
+
+    Record(String message, int stream, int level) {
+      this.message = message == null ? "null" : message;
+      this.stream = stream;
+      this.level = level;
+    }
+  }
+}
@@ -24,6 +24,9 @@ import java.io.*;
 import java.util.*;
 import java.net.*;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * TestUtil is a final utility class responsible for implementing logging across
@@ -64,11 +67,12 @@ public final class TestUtil {
 
   private static PrintWriter err = null;
 
-  private static PrintWriter additionalWriter = null;
+  // per thread log streams, used when test cases run concurrently
+  private static ThreadLocal<PrintWriter> threadOut = new ThreadLocal<PrintWriter>();
 
-  private static ObjectOutputStream objectOutputStream = null;
+  private static ThreadLocal<PrintWriter> threadErr = new ThreadLocal<PrintWriter>();
 
-  private static ObjectOutputStream objectInputStream = null;
+  private static PrintWriter additionalWriter = null;
 
   private static Socket socketOnRemoteVM = null;
 
@@ -80,8 +84,6 @@ public final class TestUtil {
 
   private static String hostOfHarness = "unset host";
 
-  private static Vector vBuffereredOutput = new Vector();
-
   // Transaction Attribute Value Mapping Table
   private static final String UNRECOGNIZED_STATUS = "UNRECOGNIZED_STATUS";
 
@@ -133,7 +135,7 @@ public final class TestUtil {
    */
   public static void logHarness(String s, Throwable t) {
     synchronized (System.out) {
-      System.out.println(df.format(new Date()) + ":  Harness - " + s);
+      System.out.println(getTimestamp() + ":  Harness - " + s);
       logToAdditionalWriter(s, t);
       if (t != null) {
         t.printStackTrace();
@@ -263,58 +265,15 @@ public final class TestUtil {
   }
 
   public static void flushStream() {
-    synchronized (socketMutex) {
-      try {
-        objectOutputStream.flush();
-      } catch (Throwable t) {
-        // Ignore
-        // System.out.println("EXCEPTION WHILE FLUSHING");
-      }
-    }
+    LogChannelHolder.CHANNEL.flush();
   }
 
   public static void writeObject(TestReportInfo info) {
-    synchronized (socketMutex) {
-      flushStream();
-      try {
-        objectOutputStream.writeObject(info);
-        // System.out.println("WROTE: " + info.sOutput);
-      } catch (Exception e) {
-        // System.out.println("EXCEPTION WHILE WRITING: " + info.sOutput);
-        synchronized (vBuffereredOutput) {
-          vBuffereredOutput.addElement(info);
-          // System.out.println("ADDED THIS STRING TO BUFFERED OUT: " +
-          // info.sOutput);
-        }
-      }
-      flushStream();
-    }
+    sendToHarness(info.sOutput, info.iStream, info.iDebugLevel);
   }
 
-  private static void sendBufferedData() throws Exception {
-    TestReportInfo tri = null;
-    synchronized (vBuffereredOutput) {
-      try {
-        // logMsg("vBuffereredOutput size = " + vBuffereredOutput.size());
-        synchronized (socketMutex) {
-          for (int ii = 0; ii < vBuffereredOutput.size(); ii++) {
-            tri = (TestReportInfo) vBuffereredOutput.elementAt(ii);
-            writeObject(tri);
-            // System.out.println("WRITING_bufferedoutput: " + tri.sOutput);
-            // objectOutputStream.writeObject(tri);
-            // objectOutputStream.flush();
-            // logMsg("writing: " + ii);
-            // logMsg("writing: " + tri.sOutput);
-          }
-        }
-        // logMsg("wrote buffered output");
-      } catch (Exception e) {
-        throw e;
-      } finally {
-        vBuffereredOutput.removeAllElements();
-        // logMsg("reinititialized buffered output vector");
-      }
-    }
+  private static void sendToHarness(String s, int stream, int level) {
+    LogChannelHolder.CHANNEL.send(s, stream, level);
   }
 
   private static final String PROPS_FILE_NAME = "-cts-props.txt";
@@ -397,77 +356,30 @@ public final class TestUtil {
               "Init: Error - Empty properties object passed to TestUtil.init");
         }
         NEW_LINE = p.getProperty("line.separator");
-        if (socketOnRemoteVM != null) {
-          socketOnRemoteVM.close();
-        }
-        if (objectOutputStream != null) {
-          objectOutputStream.close();
-        }
-        if (true) {
-          // System.out.println("INIT_CALLED AND SOCKET = NULL");
-          traceflag = Boolean
-              .valueOf(p.getProperty("harness.log.traceflag", "true"))
-              .booleanValue();
-          hostOfHarness = p.getProperty("harness.host");
-          portOfHarness = Integer
-              .parseInt(p.getProperty("harness.log.port", "2000"));
-          if (hostOfHarness == null) {
-            throw new RemoteLoggingInitException(
-                "Init: Error while trying to getProperty(harness.host) - returned null");
-          }
-          socketOnRemoteVM = new Socket(hostOfHarness, portOfHarness);
-          objectOutputStream = new ObjectOutputStream(
-              socketOnRemoteVM.getOutputStream());
-          sendBufferedData();
-          // logMsg("socketOnRemoteVM=null, renewed everything");
-        } else {
-          // we'll never get here now...
-          // call flush to make sure that we still have an open connection.
-          // if the client went away and a new client is being run, we will
-          // get an IOException, in which case we will reconnect.
-          // logMsg("socketOnRemoteVM != null, calling flush");
-          // objectOutputStream.flush();
-          // if this fails, then the connection is gone
-          // this is better than flush, because flush seems to always fail
-          TestReportInfo tri = new TestReportInfo("SVR: " + "Logging check",
-              OUTPUT_STREAM, DEBUG_OUTPUT_LEVEL, null);
-          objectOutputStream.writeObject(tri);
-          // System.out.println("WROTE TEST OBJECT");
+        traceflag = Boolean
+            .valueOf(p.getProperty("harness.log.traceflag", "true"))
+            .booleanValue();
+        hostOfHarness = p.getProperty("harness.host");
+        portOfHarness = Integer
+            .parseInt(p.getProperty("harness.log.port", "2000"));
+        if (hostOfHarness == null) {
+          throw new RemoteLoggingInitException(
+              "Init: Error while trying to getProperty(harness.host) - returned null");
         }
+        // the client VM may have shutdown, so always establish a new
+        // connection. Output of the previous test is sent before the old
+        // connection is closed, output logged while disconnected is sent
+        // over the new one.
+        flushStream();
+        LogChannelHolder.CHANNEL.close();
+        socketOnRemoteVM = new Socket(hostOfHarness, portOfHarness);
+        LogChannelHolder.CHANNEL.connect(socketOnRemoteVM);
       } catch (UnknownHostException e) {
         throw new RemoteLoggingInitException(
             "You must pass a valid host string to init()");
       } catch (IOException e) {
-        // System.out.println("EXCEPTION WHILE WRITING TEST OBJECT");
-        // the client VM may have shutdown, so establish a new connection
-        try {
-          // System.out.println("INIT_CALLED AND TRYING TO ESABLISH CONN. AFTER
-          // IOEXCEPTION");
-          traceflag = Boolean
-              .valueOf(p.getProperty("harness.log.traceflag", "true"))
-              .booleanValue();
-          hostOfHarness = p.getProperty("harness.host");
-          portOfHarness = Integer
-              .parseInt(p.getProperty("harness.log.port", "2000"));
-          if (hostOfHarness == null) {
-            throw new RemoteLoggingInitException(
-                "Init: Error while trying to getProperty(harness.host) - returned null");
-          }
-          socketOnRemoteVM.close();
-          socketOnRemoteVM = new Socket(hostOfHarness, portOfHarness);
-          objectOutputStream = new ObjectOutputStream(
-              socketOnRemoteVM.getOutputStream());
-          sendBufferedData();
-          // logMsg("caught IOException from flush(), renewed everything");
-        } catch (IOException e2) {
-          e2.printStackTrace();
-          throw new RemoteLoggingInitException(
-              "IOException in TestUtil.init()");
-        } catch (Exception e2) {
-          e2.printStackTrace();
-          throw new RemoteLoggingInitException(
-              "got a random exception in init()");
-        }
+        e.printStackTrace();
+        throw new RemoteLoggingInitException("IOException in TestUtil.init()");
       } catch (NumberFormatException e) {
         throw new RemoteLoggingInitException(
             "You must pass a valid port number string to init()");
@@ -609,6 +521,46 @@ public final class TestUtil {
     err = outStream;
   }
 
+  /**
+   * used by EETest when test cases are run concurrently. Log output of the
+   * calling thread is sent to the given streams instead of the streams set by
+   * setCurrentTest, until clearThreadLogStreams is called.
+   *
+   * @param outStream
+   *          stream printed to by the logMsg and logTrace methods
+   * @param errStream
+   *          stream printed to by the logErr methods
+   */
+  public static void setThreadLogStreams(PrintWriter outStream,
+      PrintWriter errStream) {
+    threadOut.set(outStream);
+    threadErr.set(errStream);
+  }
+
+  /**
+   * removes the streams set for the calling thread by setThreadLogStreams
+   */
+  public static void clearThreadLogStreams() {
+    threadOut.remove();
+    threadErr.remove();
+  }
+
+  private static PrintWriter getOut() {
+    PrintWriter w = threadOut.get();
+    return w != null ? w : out;
+  }
+
+  private static PrintWriter getErr() {
+    PrintWriter w = threadErr.get();
+    return w != null ? w : err;
+  }
+
+  private static String getTimestamp() {
+    synchronized (df) {
+      return df.format(new Date());
+    }
+  }
+
   /**
    * prints a string to the log stream. All tests should use this method for
    * standard logging messages
@@ -620,27 +572,14 @@ public final class TestUtil {
     if (iWhereAreWe == VM_JAVATEST) {
       logHarness(s);
     } else if (iWhereAreWe == VM_HARNESS) {
+      PrintWriter out = getOut();
       synchronized (out) {
         // just print to the appropriate stream
-        out.println(df.format(new Date()) + ":  " + s);
+        out.println(getTimestamp() + ":  " + s);
         out.flush();
       }
     } else {
-      TestReportInfo tri = new TestReportInfo("SVR: " + s, OUTPUT_STREAM,
-          NORMAL_OUTPUT_LEVEL, null);
-      writeObject(
-          tri); /*
-                 * try { synchronized(socketMutex) { objectOutputStream.flush();
-                 * objectOutputStream.writeObject(tri);
-                 * objectOutputStream.flush(); //System.out.
-                 * println("successfully wrote to objectOutputStream"); } }
-                 * catch(Exception ex) { //System.out.
-                 * println("got exception trying to write to objectOutputStream"
-                 * ); //if we have any problem, buffer the data
-                 * synchronized(vBuffereredOutput) {
-                 * vBuffereredOutput.addElement(tri); } }
-                 */
-
+      sendToHarness("SVR: " + s, OUTPUT_STREAM, NORMAL_OUTPUT_LEVEL);
     }
   }
 
@@ -662,15 +601,14 @@ public final class TestUtil {
       }
     } else {
       if (iWhereAreWe == VM_HARNESS) {
+        PrintWriter out = getOut();
         synchronized (out) {
           // just print to the appropriate stream
-          out.println(df.format(new Date()) + ":  " + s);
+          out.println(getTimestamp() + ":  " + s);
           out.flush();
         }
       } else {
-        TestReportInfo tri = new TestReportInfo("SVR: " + s, OUTPUT_STREAM,
-            NORMAL_OUTPUT_LEVEL, null);
-        writeObject(tri);
+        sendToHarness("SVR: " + s, OUTPUT_STREAM, NORMAL_OUTPUT_LEVEL);
       }
       if (t != null) {
         printStackTrace(t);
@@ -719,17 +657,16 @@ public final class TestUtil {
         logHarnessDebug(s);
       } else {
         if (iWhereAreWe == VM_HARNESS) {
+          PrintWriter out = getOut();
           synchronized (out) {
             // just print to the appropriate stream
             if (s != null && s.startsWith("SVR-TRACE"))
-              out.println(df.format(new Date()) + ":  " + s);
+              out.println(getTimestamp() + ":  " + s);
             else
-              out.println(df.format(new Date()) + ":  TRACE: " + s);
+              out.println(getTimestamp() + ":  TRACE: " + s);
           }
         } else {
-          TestReportInfo tri = new TestReportInfo("SVR-TRACE: " + s,
-              OUTPUT_STREAM, DEBUG_OUTPUT_LEVEL, null);
-          writeObject(tri);
+          sendToHarness("SVR-TRACE: " + s, OUTPUT_STREAM, DEBUG_OUTPUT_LEVEL);
         }
       }
       if (t != null) {
@@ -755,17 +692,16 @@ public final class TestUtil {
       }
     } else {
       if (iWhereAreWe == VM_HARNESS) {
+        PrintWriter err = getErr();
         synchronized (err) {
           // just print to the appropriate stream
           if (s != null && s.startsWith("SVR-ERROR"))
-            err.println(df.format(new Date()) + ":  " + s);
+            err.println(getTimestamp() + ":  " + s);
           else
-            err.println(df.format(new Date()) + ":  ERROR: " + s);
+            err.println(getTimestamp() + ":  ERROR: " + s);
         }
       } else {
-        TestReportInfo tri = new TestReportInfo("SVR-ERROR: " + s, ERROR_STREAM,
-            NORMAL_OUTPUT_LEVEL, null);
-        writeObject(tri);
+        sendToHarness("SVR-ERROR: " + s, ERROR_STREAM, NORMAL_OUTPUT_LEVEL);
       }
       if (e != null) {
         printStackTrace(e);
@@ -1046,6 +982,12 @@ public final class TestUtil {
 
   }
 
+  // batched transport for log output sent back to the harness, only
+  // created in VMs that log remotely
+  private static final class LogChannelHolder {
+    static final RemoteLogChannel CHANNEL = new RemoteLogChannel();
+  }
+
   public static void printProperties(Properties props) {
     Set<String> propertyNames = props.stringPropertyNames();
     for (String key : propertyNames) {
@@ -1060,7 +1002,16 @@ public final class TestUtil {
 class Acceptor extends Thread {
   ServerSocket serverSocket;
 
-  private Socket outputSocket = null;
+  // one reader per connected remote VM, threads are reused once
+  // a remote VM disconnects
+  private final ExecutorService readers = Executors
+      .newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "TestUtil-log-reader");
+          t.setDaemon(true);
+          return t;
+        }
+      });
 
   public Acceptor(ServerSocket ss) {
     serverSocket = ss;
@@ -1070,9 +1021,7 @@ class Acceptor extends Thread {
   public void run() {
     while (true) {
       try {
-        outputSocket = serverSocket.accept();
-        new SocketReader(outputSocket);
-        // System.out.println("new connection!!!!!");
+        readers.execute(new SocketReader(serverSocket.accept()));
       } catch (IOException ex) {
         ex.printStackTrace();
       }
@@ -1098,24 +1047,38 @@ class TestReportInfo implements Serializable {
   }
 }
 
-class SocketReader extends Thread {
+class SocketReader implements Runnable {
   private Socket outputSocket = null;
 
   public SocketReader(Socket s) {
     outputSocket = s;
-    this.start();
   }
 
   public void run() {
-    ObjectInputStream objIn;
+    try {
+      BufferedInputStream in = new BufferedInputStream(
+          outputSocket.getInputStream(), 8192);
+      if (!RemoteLogChannel.read(in)) {
+        readObjects(in);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        outputSocket.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  // reads the serialized TestReportInfo objects sent by older remote VMs
+  private void readObjects(InputStream in) throws IOException {
+    ObjectInputStream objIn = new ObjectInputStream(in);
     TestReportInfo tri = null;
     try {
-      objIn = new ObjectInputStream(outputSocket.getInputStream());
-      // while((tri = (TestReportInfo)objIn.readObject()) != null)
       while (true) {
         tri = (TestReportInfo) objIn.readObject();
         if (tri.iDebugLevel == TestUtil.DEBUG_OUTPUT_LEVEL) {
-          // System.out.println("about to call logTrace");
           TestUtil.logTrace(tri.sOutput);
         } else {
           if (tri.iStream == TestUtil.ERROR_STREAM) {
@@ -1123,10 +1086,8 @@ class SocketReader extends Thread {
               TestUtil.logErr(tri.sOutput);
             else
               TestUtil.logErr(tri.sOutput, tri.exception);
-            // System.out.println("about to call logErr");
           } else // assume outputstream
           {
-            // System.out.println("about to call logMsg");
             TestUtil.logMsg(tri.sOutput);
           }
         }
@@ -1135,14 +1096,6 @@ class SocketReader extends Thread {
       // do nothing since the eof broke us out of the loop
     } catch (ClassNotFoundException e) {
       e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
     }
-    // cleanup socket no matter what happens
-    /*
-     * try { outputSocket.close(); outputSocket = null; } catch(IOException e) {
-     * 
-     * }
-     */
   }
 }
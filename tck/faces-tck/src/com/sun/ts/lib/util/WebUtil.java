@@ -35,7 +35,7 @@ public class WebUtil {
    * Reponse object containing information returned from the web server
    */
   public static class Response {
-    /** Version (usually HTTP/1.0) */
+    /** Version (usually HTTP/1.1) */
     public String versionToken;
 
     /** Status (e.g. 401) */
@@ -168,139 +168,105 @@ public class WebUtil {
       InetAddress addr, int port, String req, Properties postData,
       Hashtable cookieList, String username, String password)
       throws IOException {
-    String protocol = "HTTP/1.0";
-    URL requestURL;
-    Socket socket = null;
-    PrintWriter out = null;
-    BufferedReader in = null;
-    String line = null;
-    Response response = new Response();
-    String hostname = null;
-
     try {
-      hostname = addr.getHostName();
-      requestURL = new URL("http", hostname, port, req);
-      req = method + " " + req + " " + protocol;
-
-      socket = new Socket(addr, port);
-
-      in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-      out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-      send(out, req);
-
-      // send Host header
-      if (port == 80) {
-        send(out, "Host: " + hostname);
-      } else {
-        send(out, "Host: " + hostname + ':' + port);
-      }
+      String hostname = addr.getHostName();
+      // check that the request makes a valid URL
+      new URL("http", hostname, port, req);
+      byte[] request = toRequest(method, hostname, port, req, postData,
+          cookieList, username, password);
+
+      boolean head = method.toUpperCase().equals("HEAD");
+      boolean idempotent = head || method.toUpperCase().equals("GET");
+      return NioHttpClient.execute(addr, port, request, head, idempotent);
+    } catch (MalformedURLException e) {
+      throw new IOException("MalformedURLException: " + e.getMessage());
+    } catch (UnknownHostException e) {
+      throw new IOException("UnknownHostException: " + e.getMessage());
+    } catch (ConnectException e) {
+      throw new IOException("ConnectException: " + e.getMessage());
+    }
+  }
 
-      if (cookieList != null) {
-        // Send cookies:
-        Enumeration keys = cookieList.keys();
+  /**
+   * Closes the connections kept open to web servers.
+   */
+  public static void closeConnections() {
+    NioHttpClient.closeIdleConnections();
+  }
 
-        // Does at least one cookie exist?
-        if (keys.hasMoreElements()) {
-          String cookieString = "Cookie: ";
+  /**
+   * Builds an HTTP/1.1 request, headers and body included.
+   */
+  private static byte[] toRequest(String method, String hostname, int port,
+      String req, Properties postData, Hashtable cookieList, String username,
+      String password) {
+    StringBuffer out = new StringBuffer(256);
+    send(out, method + " " + req + " HTTP/1.1");
+
+    // send Host header
+    if (port == 80) {
+      send(out, "Host: " + hostname);
+    } else {
+      send(out, "Host: " + hostname + ':' + port);
+    }
 
-          // Add each cookie to the string
-          boolean first = true;
-          while (keys.hasMoreElements()) {
-            String key = (String) keys.nextElement();
-            String value = (String) cookieList.get(key);
-            cookieString += (first ? "" : "; ") + key + "=" + value; // + ";
-                                                                     // $Path=/";
-            first = false;
-          }
+    if (!NioHttpClient.KEEP_ALIVE) {
+      send(out, "Connection: close");
+    }
 
-          // Write cookies:
-          send(out, cookieString);
+    if (cookieList != null && !cookieList.isEmpty()) {
+      // Send cookies:
+      StringBuffer cookieString = new StringBuffer("Cookie: ");
+      boolean first = true;
+      for (Enumeration keys = cookieList.keys(); keys.hasMoreElements();) {
+        String key = (String) keys.nextElement();
+        if (!first) {
+          cookieString.append("; ");
         }
+        cookieString.append(key).append('=').append(cookieList.get(key));
+        first = false;
       }
+      send(out, cookieString.toString());
+    }
 
-      // Send authentication information if necessary:
-      if (username != null) {
-        String code = encodeBase64(username + ":" + password);
-        send(out, "Authorization: Basic " + code.trim());
-      }
-
-      // Send extra header information if we are posting.
-      if (postData != null) {
-        send(out, "Content-type: application/x-www-form-urlencoded");
-      }
-
-      // If this is a post request, send post data:
-      if ((postData != null) && method.toUpperCase().equals("POST")) {
-        String postString = TestUtil.toEncodedString(postData);
-
-        // Skip a line:
-        send(out, "Content-length: " + postString.length());
-        send(out, "");
-        send(out, postString);
-      } else {
-        // Skip a line:
-        send(out, "");
-      }
-
-      out.flush();
-
-      // Read first line and check for HTTP version and OK.
-      line = in.readLine();
-      if (line != null) {
-        TestUtil.logTrace("HEADER: " + line);
-
-        StringTokenizer st = new StringTokenizer(line.trim());
-        response.versionToken = st.nextToken();
-        response.statusToken = st.nextToken();
-      }
-
-      // Read each line of the header until we hit a blank line
-      while ((line = in.readLine()) != null) {
-        TestUtil.logTrace("HEADER: " + line);
-
-        // Blank line means we are done with the header:
-        if (line.trim().equals(""))
-          break;
-
-        // Analyze special tags location and set cookie
-        if (line.toLowerCase().startsWith("location:")) {
-          // This is a redirect. Extract valuable infomration:
-          response.location = line.substring(10);
-        } else if (line.toLowerCase().startsWith("set-cookie:")) {
-          // This is a cookie. Add the cookie to the response
-          // object.
-          response.parseCookie(line);
-        } else if (line.toLowerCase().startsWith("www-authenticate:")) {
-          // Request to authenticate this page.
-          response.authenticationRequested = true;
-        }
-      }
+    // Send authentication information if necessary:
+    if (username != null) {
+      String code = encodeBase64(username + ":" + password);
+      send(out, "Authorization: Basic " + code.trim());
+    }
 
-      // The rest is content:
-      while ((line = in.readLine()) != null) {
-        response.content += line + "\n";
-      }
+    // Send extra header information if we are posting.
+    if (postData != null) {
+      send(out, "Content-type: application/x-www-form-urlencoded");
+    }
 
-      in.close();
-      out.close();
-    } catch (MalformedURLException e) {
-      throw new IOException("MalformedURLException: " + e.getMessage());
-    } catch (UnknownHostException e) {
-      throw new IOException("UnknownHostException: " + e.getMessage());
-    } catch (ConnectException e) {
-      throw new IOException("ConnectException: " + e.getMessage());
+    // If this is a post request, send post data:
+    byte[] body = new byte[0];
+    if ((postData != null) && method.toUpperCase().equals("POST")) {
+      String postString = TestUtil.toEncodedString(postData);
+      body = postString.getBytes();
+      send(out, "Content-length: " + body.length);
+      send(out, "");
+      TestUtil.logTrace("REQUEST: " + postString);
+    } else {
+      // Skip a line:
+      send(out, "");
     }
 
-    return response;
+    byte[] headers = out.toString().getBytes();
+    byte[] request = new byte[headers.length + body.length];
+    System.arraycopy(headers, 0, request, 0, headers.length);
+    System.arraycopy(body, 0, request, headers.length, body.length);
+    return request;
   }
 
   /**
-   * Outputs a single line of text to the given output stream. Appends a \r\n
+   * Appends a single line of text to the request being built. Appends a \r\n
    * automatically. By adding a System.out.println here, you can easily echo
    * what is being sent to the web server.
    */
-  private static void send(PrintWriter out, String s) {
-    out.print(s + "\r\n");
+  private static void send(StringBuffer out, String s) {
+    out.append(s).append("\r\n");
     TestUtil.logTrace("REQUEST: " + s);
   }
 
@@ -27,7 +27,9 @@ import org.apache.commons.httpclient.HttpState;
 
 import com.sun.ts.lib.harness.EETest;
 import com.sun.ts.lib.util.TestUtil;
+import com.sun.ts.tests.common.webclient.http.HttpConnectionPool;
 import com.sun.ts.tests.common.webclient.http.HttpRequest;
+import com.sun.ts.tests.common.webclient.http.HttpResponse;
 
 /**
  * <PRE>
@@ -115,6 +117,16 @@ public abstract class BaseUrlClient extends EETest {
    */
   protected static final String TSHOME = "ts_home";
 
+  /**
+   * Webclient connection pooling property
+   */
+  protected static final String CONNECTION_POOLING = HttpConnectionPool.POOLING_PROP;
+
+  /**
+   * Webclient maximum response body size property
+   */
+  protected static final String MAX_BODY_SIZE = HttpResponse.MAX_BODY_SIZE_PROP;
+
   /**
    * Test properties
    */
@@ -412,6 +424,16 @@ public abstract class BaseUrlClient extends EETest {
           "[BaseUrlClient] 'tshome' was not set in the " + " ts.jte.");
     }
 
+    String pooling = p.getProperty(CONNECTION_POOLING);
+    if (!isNullOrEmpty(pooling)) {
+      HttpConnectionPool.setEnabled(Boolean.parseBoolean(pooling.trim()));
+    }
+
+    String maxBodySize = p.getProperty(MAX_BODY_SIZE);
+    if (!isNullOrEmpty(maxBodySize)) {
+      HttpResponse.setMaxBodySize(Long.parseLong(maxBodySize.trim()));
+    }
+
     TestUtil.logMsg("[BaseUrlClient] Test setup OK");
   }
 
@@ -423,6 +445,7 @@ public abstract class BaseUrlClient extends EETest {
    *              if an error occurs
    */
   public void cleanup() throws Fault {
+    TestUtil.logTrace(GoldenfileCache.getStatistics());
     TestUtil.logMsg("[BaseUrlClient] Test cleanup OK");
   }
 
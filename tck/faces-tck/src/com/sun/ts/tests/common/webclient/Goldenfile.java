@@ -20,11 +20,15 @@
 
 package com.sun.ts.tests.common.webclient;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 
 import com.sun.ts.lib.util.TestUtil;
 
@@ -102,6 +106,15 @@ public class Goldenfile {
     return _length;
   }
 
+  /**
+   * Returns a value indicating whether the goldenfile could be located.
+   *
+   * @return true if the goldenfile was not found
+   */
+  public boolean isMissing() {
+    return _errMessage == NOTFOUND;
+  }
+
   /**
    * Returns the byte content of the specified goldenfile using the charset
    * encoding specified in the response from the server.
@@ -112,7 +125,7 @@ public class Goldenfile {
    */
   public byte[] getGoldenFileAsBytes() throws IOException {
     if (_file != null) {
-      return getGoldenFileAsString().getBytes();
+      return GoldenfileCache.getBytes(_file, _encoding).clone();
     } else {
       return _errMessage;
     }
@@ -129,17 +142,37 @@ public class Goldenfile {
   public String getGoldenFileAsString() throws IOException {
     String gf = null;
     if (_file != null) {
-      TestUtil.logTrace(
-          "[Goldenfile] Loading goldenfile using " + "encoding: " + _encoding);
-      FileInputStream in = new FileInputStream(_file);
-      gf = Util.getEncodedStringFromStream(in, _encoding);
-      in.close();
+      gf = GoldenfileCache.getContent(_file, _encoding);
     } else {
       gf = new String(_errMessage);
     }
     return gf;
   }
 
+  /**
+   * Returns a Reader over the goldenfile decoding it using the charset
+   * encoding specified in the response from the server. The Reader is served
+   * from the goldenfile cache, or, when the cache is disabled, reads the file
+   * incrementally as it is consumed. The caller is responsible for closing the
+   * Reader.
+   *
+   * @return goldenfile as a Reader
+   * @throws IOException
+   *           If an error occurs processing the file.
+   */
+  public Reader getGoldenFileAsReader() throws IOException {
+    if (_file != null && !GoldenfileCache.isEnabled()) {
+      TestUtil.logTrace(
+          "[Goldenfile] Streaming goldenfile using " + "encoding: " + _encoding);
+      return new BufferedReader(
+          new InputStreamReader(new FileInputStream(_file), _encoding));
+    } else if (_file != null) {
+      return new StringReader(GoldenfileCache.getContent(_file, _encoding));
+    } else {
+      return new StringReader(new String(_errMessage));
+    }
+  }
+
   /**
    * Returns the goldenfile as an InputStream using the charset encoding
    * specified in the response from the server.
@@ -150,7 +183,8 @@ public class Goldenfile {
    */
   public InputStream getGoldenFileAsStream() throws IOException {
     if (_file != null) {
-      return new ByteArrayInputStream(getGoldenFileAsBytes());
+      return new ByteArrayInputStream(
+          GoldenfileCache.getBytes(_file, _encoding));
     } else {
       return new ByteArrayInputStream(_errMessage);
     }
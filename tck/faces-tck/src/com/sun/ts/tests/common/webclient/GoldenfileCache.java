@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.tests.common.webclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.ts.lib.util.TestUtil;
+
+/**
+ * Process wide cache of decoded goldenfiles shared by all {@link Goldenfile}
+ * instances.
+ * <p>
+ * Entries are keyed by the canonical path of the file and the encoding used to
+ * decode it. An entry is reloaded when the modification time or length of the
+ * file changes. Files are read through a <code>FileChannel</code>; files larger
+ * than <tt>MAP_THRESHOLD</tt> bytes are memory-mapped instead of copied into a
+ * heap buffer. The cache can be tuned or disabled using the following system
+ * properties:
+ * </p>
+ * <ul>
+ * <li><tt>webclient.goldenfile.cache</tt> - <tt>false</tt> disables the cache
+ * and reads the goldenfile on every access (default <tt>true</tt>)</li>
+ * <li><tt>webclient.goldenfile.cache.size</tt> - maximum number of cached
+ * goldenfiles, the least recently used entry is evicted first (default
+ * <tt>512</tt>)</li>
+ * </ul>
+ */
+public final class GoldenfileCache {
+
+  /**
+   * Cache enabled property
+   */
+  public static final String CACHE_PROP = "webclient.goldenfile.cache";
+
+  /**
+   * Maximum number of entries property
+   */
+  public static final String SIZE_PROP = "webclient.goldenfile.cache.size";
+
+  /**
+   * Files larger than this number of bytes are memory-mapped.
+   */
+  private static final long MAP_THRESHOLD = 64 * 1024;
+
+  private static final boolean _enabled = !"false"
+      .equalsIgnoreCase(System.getProperty(CACHE_PROP, "true").trim());
+
+  private static final int _maxEntries = Integer.getInteger(SIZE_PROP, 512)
+      .intValue();
+
+  private static final Map<String, Entry> _entries = new LinkedHashMap<String, Entry>(
+      64, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > _maxEntries;
+    }
+  };
+
+  private static final AtomicLong _hits = new AtomicLong();
+
+  private static final AtomicLong _misses = new AtomicLong();
+
+  /**
+   * Private constructor as all interaction with this class is static.
+   */
+  private GoldenfileCache() {
+  }
+
+  /*
+   * public methods
+   * ========================================================================
+   */
+
+  /**
+   * Returns the number of lookups served from the cache.
+   *
+   * @return cache hits
+   */
+  public static long getHitCount() {
+    return _hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required the goldenfile to be read.
+   *
+   * @return cache misses
+   */
+  public static long getMissCount() {
+    return _misses.get();
+  }
+
+  /**
+   * Returns a one line summary of the cache counters.
+   *
+   * @return cache statistics
+   */
+  public static String getStatistics() {
+    int size;
+    synchronized (_entries) {
+      size = _entries.size();
+    }
+    return "[GoldenfileCache] hits: " + _hits.get() + ", misses: "
+        + _misses.get() + ", entries: " + size;
+  }
+
+  /**
+   * Removes every entry from the cache and resets the counters.
+   */
+  public static void clear() {
+    synchronized (_entries) {
+      _entries.clear();
+    }
+    _hits.set(0L);
+    _misses.set(0L);
+  }
+
+  /*
+   * package-private methods
+   * ========================================================================
+   */
+
+  /**
+   * Returns whether the cache is enabled, see <tt>webclient.goldenfile.cache</tt>.
+   *
+   * @return false if every lookup reads the goldenfile
+   */
+  static boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Returns the content of the file decoded using the provided encoding.
+   *
+   * @param file
+   *          goldenfile to load
+   * @param encoding
+   *          charset used to decode the file
+   * @return the decoded goldenfile
+   * @throws IOException
+   *           if the file cannot be read or the encoding is not supported
+   */
+  static String getContent(File file, String encoding) throws IOException {
+    return getEntry(file, encoding).content;
+  }
+
+  /**
+   * Returns the decoded content of the file encoded using the platform's
+   * default charset. The returned array is shared and must not be modified.
+   *
+   * @param file
+   *          goldenfile to load
+   * @param encoding
+   *          charset used to decode the file
+   * @return the goldenfile as bytes
+   * @throws IOException
+   *           if the file cannot be read or the encoding is not supported
+   */
+  static byte[] getBytes(File file, String encoding) throws IOException {
+    return getEntry(file, encoding).getBytes();
+  }
+
+  /*
+   * private methods
+   * ========================================================================
+   */
+
+  private static Entry getEntry(File file, String encoding)
+      throws IOException {
+    long modified = file.lastModified();
+    long length = file.length();
+    if (!_enabled) {
+      _misses.incrementAndGet();
+      return new Entry(load(file, encoding), modified, length);
+    }
+
+    String key = file.getCanonicalPath() + '|' + encoding;
+    Entry entry;
+    synchronized (_entries) {
+      entry = _entries.get(key);
+    }
+    if (entry != null && entry.modified == modified
+        && entry.length == length) {
+      _hits.incrementAndGet();
+      return entry;
+    }
+
+    _misses.incrementAndGet();
+    entry = new Entry(load(file, encoding), modified, length);
+    synchronized (_entries) {
+      _entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  private static String load(File file, String encoding) throws IOException {
+    Charset charset;
+    try {
+      charset = Charset.forName(encoding);
+    } catch (IllegalCharsetNameException e) {
+      throw new UnsupportedEncodingException(encoding);
+    } catch (UnsupportedCharsetException e) {
+      throw new UnsupportedEncodingException(encoding);
+    }
+
+    TestUtil.logTrace("[GoldenfileCache] Loading goldenfile " + file
+        + " using encoding: " + encoding);
+    FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      ByteBuffer buffer;
+      if (size > MAP_THRESHOLD) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+          // keep reading until the buffer is full
+        }
+        buffer.flip();
+      }
+      return charset.decode(buffer).toString();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /*
+   * private classes
+   * ========================================================================
+   */
+
+  private static final class Entry {
+    final String content;
+
+    final long modified;
+
+    final long length;
+
+    private volatile byte[] bytes = null;
+
+    Entry(String content, long modified, long length) {
+      this.content = content;
+      this.modified = modified;
+      this.length = length;
+    }
+
+    byte[] getBytes() {
+      byte[] b = bytes;
+      if (b == null) {
+        b = content.getBytes();
+        bytes = b;
+      }
+      return b;
+    }
+  }
+}
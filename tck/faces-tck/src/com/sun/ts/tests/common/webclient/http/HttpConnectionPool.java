@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.tests.common.webclient.http;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.DefaultProtocolSocketFactory;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.SSLProtocolSocketFactory;
+
+import com.sun.ts.lib.util.TestUtil;
+
+/**
+ * Process wide, bounded pool of keep-alive connections shared by all
+ * {@link HttpRequest} instances (and therefore by every <code>WebTestCase</code>
+ * and <code>TestSequence</code>) executed within the same JVM.
+ * <p>
+ * Connections are pooled per host, port and protocol. The pool can be tuned or
+ * disabled using the following system properties:
+ * </p>
+ * <ul>
+ * <li><tt>webclient.connection.pooling</tt> - <tt>false</tt> disables pooling
+ * and restores the connection-per-request behavior (default <tt>true</tt>)</li>
+ * <li><tt>webclient.connection.maxPerHost</tt> - maximum number of pooled
+ * connections per host (default <tt>4</tt>)</li>
+ * <li><tt>webclient.connection.maxTotal</tt> - maximum number of pooled
+ * connections (default <tt>20</tt>)</li>
+ * <li><tt>webclient.connection.timeout</tt> - milliseconds to wait for a free
+ * connection before giving up (default <tt>60000</tt>)</li>
+ * </ul>
+ */
+public final class HttpConnectionPool {
+
+  /**
+   * Pooling enabled property
+   */
+  public static final String POOLING_PROP = "webclient.connection.pooling";
+
+  /**
+   * Max connections per host property
+   */
+  public static final String MAX_PER_HOST_PROP = "webclient.connection.maxPerHost";
+
+  /**
+   * Max total connections property
+   */
+  public static final String MAX_TOTAL_PROP = "webclient.connection.maxTotal";
+
+  /**
+   * Connection wait timeout property
+   */
+  public static final String TIMEOUT_PROP = "webclient.connection.timeout";
+
+  /**
+   * Plain HTTP protocol shared by pooled connections
+   */
+  private static final Protocol HTTP = new Protocol("http",
+      new DefaultProtocolSocketFactory(), HttpRequest.DEFAULT_HTTP_PORT);
+
+  /**
+   * HTTP over SSL protocol shared by pooled connections
+   */
+  private static final Protocol HTTPS = new Protocol("https",
+      new SSLProtocolSocketFactory(), HttpRequest.DEFAULT_SSL_PORT);
+
+  private static boolean _enabled = !"false"
+      .equalsIgnoreCase(System.getProperty(POOLING_PROP, "true").trim());
+
+  private static final long _timeout = Long
+      .getLong(TIMEOUT_PROP, 60000L).longValue();
+
+  private static MultiThreadedHttpConnectionManager _manager = null;
+
+  private static HttpClient _client = null;
+
+  /**
+   * Private constructor as all interaction with this class is static.
+   */
+  private HttpConnectionPool() {
+  }
+
+  /*
+   * public methods
+   * ========================================================================
+   */
+
+  /**
+   * Returns a value indicating whether connections are pooled or not.
+   *
+   * @return <code>true</code> if requests share pooled connections
+   */
+  public static synchronized boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Enables or disables connection pooling. Disabling the pool closes all
+   * connections currently held by it.
+   *
+   * @param enabled
+   *          a value of false restores the connection-per-request behavior
+   */
+  public static synchronized void setEnabled(boolean enabled) {
+    if (!enabled) {
+      shutdown();
+    }
+    _enabled = enabled;
+  }
+
+  /**
+   * Closes every connection held by the pool. The pool will be re-created the
+   * next time a connection is requested.
+   */
+  public static synchronized void shutdown() {
+    if (_manager != null) {
+      TestUtil.logTrace("[HttpConnectionPool] Shutting down connection pool");
+      _manager.shutdown();
+      _manager = null;
+      _client = null;
+    }
+  }
+
+  /*
+   * package-private methods
+   * ========================================================================
+   */
+
+  /**
+   * Returns the protocol to use for pooled connections.
+   *
+   * @param secure
+   *          whether the connection uses SSL
+   * @return the shared protocol instance
+   */
+  static Protocol getProtocol(boolean secure) {
+    return secure ? HTTPS : HTTP;
+  }
+
+  /**
+   * Returns a host configuration for the provided target.
+   *
+   * @param host
+   *          target host
+   * @param port
+   *          target port
+   * @param secure
+   *          whether the connection uses SSL
+   * @return host configuration used to key the pool
+   */
+  static HostConfiguration getHostConfiguration(String host, int port,
+      boolean secure) {
+    HostConfiguration config = new HostConfiguration();
+    config.setHost(host, port, getProtocol(secure));
+    return config;
+  }
+
+  /**
+   * Returns the <code>HttpClient</code> backed by the pool. The client is
+   * thread safe and shared by all requests.
+   *
+   * @return pooled client
+   */
+  static synchronized HttpClient getClient() {
+    getManager();
+    return _client;
+  }
+
+  /**
+   * Checks out an open connection to the provided target. The connection is
+   * returned to the pool once the response has been fully read and the
+   * method's connection has been released.
+   *
+   * @param config
+   *          target host configuration
+   * @return an open connection
+   * @throws IOException
+   *           if no connection could be obtained or opened
+   */
+  static HttpConnection getConnection(HostConfiguration config)
+      throws IOException {
+    HttpConnection conn = getManager().getConnectionWithTimeout(config,
+        _timeout);
+    if (!conn.isOpen()) {
+      try {
+        conn.open();
+      } catch (IOException ioe) {
+        conn.releaseConnection();
+        throw ioe;
+      }
+    }
+    return conn;
+  }
+
+  /*
+   * private methods
+   * ========================================================================
+   */
+
+  private static synchronized HttpConnectionManager getManager() {
+    if (_manager == null) {
+      _manager = new MultiThreadedHttpConnectionManager();
+      HttpConnectionManagerParams params = _manager.getParams();
+      params.setDefaultMaxConnectionsPerHost(
+          Integer.getInteger(MAX_PER_HOST_PROP, 4).intValue());
+      params.setMaxTotalConnections(
+          Integer.getInteger(MAX_TOTAL_PROP, 20).intValue());
+      params.setStaleCheckingEnabled(true);
+      _client = new HttpClient(_manager);
+      TestUtil.logTrace("[HttpConnectionPool] Created connection pool: "
+          + params.getDefaultMaxConnectionsPerHost() + " per host, "
+          + params.getMaxTotalConnections() + " total");
+    }
+    return _manager;
+  }
+}
@@ -25,6 +25,7 @@ import java.util.StringTokenizer;
 
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnection;
 import org.apache.commons.httpclient.HttpException;
@@ -348,6 +349,10 @@ public class HttpRequest {
    *           if an I/O error occurs during dispatch.
    */
   public HttpResponse execute() throws IOException, HttpException {
+    if (HttpConnectionPool.isEnabled()) {
+      return executePooled();
+    }
+
     String method;
     int defaultPort;
     ProtocolSocketFactory factory;
@@ -461,6 +466,49 @@ public class HttpRequest {
    * ========================================================================
    */
 
+  /**
+   * Dispatches the current request over a connection obtained from the shared
+   * {@link HttpConnectionPool}. The response body is read before the
+   * connection is handed back to the pool so that it can be reused by
+   * subsequent requests to the same host.
+   *
+   * @return HttpResponse the server's response.
+   * @throws IOException
+   *           if an I/O error occurs during dispatch.
+   */
+  private HttpResponse executePooled() throws IOException, HttpException {
+    HostConfiguration config = HttpConnectionPool.getHostConfiguration(_host,
+        _port, _isSecure);
+
+    TestUtil.logMsg("[HttpRequest] Dispatching request: '" + _requestLine
+        + "' to target server at '" + _host + ":" + _port + "'");
+
+    addSupportHeaders();
+    _headers = _method.getRequestHeaders();
+
+    TestUtil.logTrace(
+        "########## The real value set: " + _method.getFollowRedirects());
+
+    HttpResponse response;
+    try {
+      if (_method.getFollowRedirects()) {
+        // redirects are processed by the client, which historically
+        // used a state of its own rather than the request's state
+        client = HttpConnectionPool.getClient();
+        client.executeMethod(config, _method, new HttpState());
+      } else {
+        _method.execute(getState(), HttpConnectionPool.getConnection(config));
+      }
+      response = new HttpResponse(_host, _port, _isSecure, _method,
+          getState());
+      response.getBody();
+    } finally {
+      _method.releaseConnection();
+    }
+
+    return response;
+  }
+
   private void createCookie(String cookieHeader) {
     String cookieLine = cookieHeader.substring(cookieHeader.indexOf(':') + 1)
         .trim();
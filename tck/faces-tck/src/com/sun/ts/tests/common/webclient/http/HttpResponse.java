@@ -30,14 +30,27 @@ import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.HttpVersion;
 
-import com.sun.ts.tests.common.webclient.Util;
+import com.sun.ts.lib.util.TestUtil;
 
 /**
  * This class represents an HTTP response from the server.
+ * <p>
+ * The body of the response is read from the connection once, and kept as
+ * bytes; the strings returned are decoded from those bytes when first asked
+ * for. A response whose body is larger than the value of the
+ * <tt>webclient.response.maxBodySize</tt> system property, in bytes, fails with
+ * an <code>IOException</code> as soon as the limit is exceeded (default
+ * <tt>67108864</tt>, a negative value means no limit).
+ * </p>
  */
 
 public class HttpResponse {
 
+  /**
+   * Maximum response body size property
+   */
+  public static final String MAX_BODY_SIZE_PROP = "webclient.response.maxBodySize";
+
   /**
    * Default encoding based on Servlet Specification
    */
@@ -48,6 +61,9 @@ public class HttpResponse {
    */
   private static final String CONTENT_TYPE = "Content-Type";
 
+  private static long _maxBodySize = Long
+      .getLong(MAX_BODY_SIZE_PROP, 64L * 1024 * 1024).longValue();
+
   /**
    * Wrapped HttpMethod used to pull response info from.
    */
@@ -64,10 +80,15 @@ public class HttpResponse {
   private String _encoding = DEFAULT_ENCODING;
 
   /**
-   * The response body. Initialized after first call to one of the
-   * getResponseBody methods and cached for subsequent calls.
+   * The response body. Read after first call to one of the getResponseBody
+   * methods, or before the connection is released when it is pooled.
+   */
+  private ResponseBody _body = null;
+
+  /**
+   * The encoded response body as bytes of the platform's default charset.
    */
-  private String _responseBody = null;
+  private byte[] _encodedBytes = null;
 
   /**
    * Host name used for processing request
@@ -84,6 +105,19 @@ public class HttpResponse {
    */
   private boolean _isSecure;
 
+  /**
+   * Status code of a response that is one part of a batched response, or -1.
+   * The status code, reason-phrase, content type and body of such a part
+   * replace those of the wrapped HttpMethod, which holds the whole batch.
+   */
+  private int _partStatusCode = -1;
+
+  private String _partReasonPhrase = null;
+
+  private String _partContentType = null;
+
+  private byte[] _partBody = null;
+
   /** Creates new HttpResponse */
   public HttpResponse(String host, int port, boolean isSecure,
       HttpMethod method, HttpState state) {
@@ -95,18 +129,62 @@ public class HttpResponse {
     _state = state;
   }
 
+  /**
+   * Creates new HttpResponse for one part of the response to a batched
+   * request.
+   *
+   * @param batch
+   *          the response to the batched request
+   * @param statusCode
+   *          the status code of the part
+   * @param reasonPhrase
+   *          the reason-phrase of the part
+   * @param contentType
+   *          the content type of the part, including its charset
+   * @param body
+   *          the body of the part
+   */
+  public HttpResponse(HttpResponse batch, int statusCode, String reasonPhrase,
+      String contentType, byte[] body) {
+    this(batch._host, batch._port, batch._isSecure, batch._method,
+        batch._state);
+    _partStatusCode = statusCode;
+    _partReasonPhrase = reasonPhrase;
+    _partContentType = contentType;
+    _partBody = body;
+  }
+
   /*
    * public methods
    * ========================================================================
    */
 
+  /**
+   * Returns the maximum size of a response body.
+   *
+   * @return maximum number of bytes, or a negative value if there is no limit
+   */
+  public static synchronized long getMaxBodySize() {
+    return _maxBodySize;
+  }
+
+  /**
+   * Sets the maximum size of the response bodies read from now on.
+   *
+   * @param maxBodySize
+   *          maximum number of bytes, or a negative value for no limit
+   */
+  public static synchronized void setMaxBodySize(long maxBodySize) {
+    _maxBodySize = maxBodySize;
+  }
+
   /**
    * Returns the HTTP status code returned by the server
    *
    * @return HTTP status code
    */
   public String getStatusCode() {
-    return Integer.toString(_method.getStatusCode());
+    return Integer.toString(getStatus());
   }
 
   /**
@@ -115,6 +193,9 @@ public class HttpResponse {
    * @return HTTP reason-phrase
    */
   public String getReasonPhrase() {
+    if (isPart()) {
+      return _partReasonPhrase;
+    }
     return _method.getStatusText();
   }
 
@@ -153,18 +234,19 @@ public class HttpResponse {
    * @return response body as an array of bytes.
    */
   public byte[] getResponseBodyAsBytes() throws IOException {
-    return getEncodedResponse().getBytes();
+    return getEncodedBytes().clone();
   }
 
   /**
-   * Returns the response as bytes (no encoding is performed by client.
+   * Returns the response as bytes (no encoding is performed by client). The
+   * returned array is shared with this response and must not be modified.
    * 
    * @return the raw response bytes
    * @throws IOException
    *           if an error occurs reading from server
    */
   public byte[] getResponseBodyAsRawBytes() throws IOException {
-    return _method.getResponseBody();
+    return getBody().getBytes();
   }
 
   /**
@@ -186,7 +268,10 @@ public class HttpResponse {
    *           if an error occurs reading from the server
    */
   public String getResponseBodyAsRawString() throws IOException {
-    return _method.getResponseBodyAsString();
+    if (isPart()) {
+      return getBody().getString(getResponseEncoding());
+    }
+    return getBody().getString(((HttpMethodBase) _method).getResponseCharSet());
   }
 
   /**
@@ -196,7 +281,7 @@ public class HttpResponse {
    * @return response body as an InputStream
    */
   public InputStream getResponseBodyAsStream() throws IOException {
-    return new ByteArrayInputStream(getEncodedResponse().getBytes());
+    return new ByteArrayInputStream(getEncodedBytes());
   }
 
   /**
@@ -208,7 +293,7 @@ public class HttpResponse {
    *           if an error occurs reading from the server
    */
   public InputStream getResponseBodyAsRawStream() throws IOException {
-    return _method.getResponseBodyAsStream();
+    return getBody().getStream();
   }
 
   /**
@@ -217,9 +302,16 @@ public class HttpResponse {
    * @return charset encoding
    */
   public String getResponseEncoding() {
-    Header content = _method.getResponseHeader(CONTENT_TYPE);
-    if (content != null) {
-      String headerVal = content.getValue();
+    String headerVal = null;
+    if (isPart()) {
+      headerVal = _partContentType;
+    } else {
+      Header content = _method.getResponseHeader(CONTENT_TYPE);
+      if (content != null) {
+        headerVal = content.getValue();
+      }
+    }
+    if (headerVal != null) {
       int idx = headerVal.indexOf(";charset=");
       if (idx > -1) {
         // content encoding included in response
@@ -249,8 +341,8 @@ public class HttpResponse {
     sb.append("[RESPONSE STATUS LINE] -> ");
     sb.append(((HttpMethodBase) _method).getParams().getVersion()
         .equals(HttpVersion.HTTP_1_1) ? "HTTP/1.1 " : "HTTP/1.0 ");
-    sb.append(_method.getStatusCode()).append(' ');
-    sb.append(_method.getStatusText()).append('\n');
+    sb.append(getStatus()).append(' ');
+    sb.append(getReasonPhrase()).append('\n');
     Header[] headers = _method.getResponseHeaders();
     if (headers != null && headers.length != 0) {
       for (int i = 0; i < headers.length; i++) {
@@ -259,9 +351,14 @@ public class HttpResponse {
       }
     }
 
+    if (isPart()) {
+      sb.append("       [RESPONSE PART CONTENT TYPE] -> ");
+      sb.append(_partContentType).append('\n');
+    }
+
     String resBody;
     try {
-      resBody = _method.getResponseBodyAsString();
+      resBody = getResponseBodyAsRawString();
     } catch (IOException ioe) {
       resBody = "UNEXECTED EXCEPTION: " + ioe.toString();
     }
@@ -293,21 +390,69 @@ public class HttpResponse {
     return _method.getPath();
   }
 
+  /*
+   * package-private methods
+   * ========================================================================
+   */
+
+  /**
+   * Returns the response body, reading it from the connection on the first
+   * call. The connection is aborted if the body cannot be read completely, so
+   * that it is not reused.
+   *
+   * @return the response body
+   * @throws IOException
+   *           if an error occurs reading from the server, or if the body
+   *           exceeds the maximum size
+   */
+  synchronized ResponseBody getBody() throws IOException {
+    if (_body == null) {
+      if (isPart()) {
+        _body = new ResponseBody(_partBody);
+      } else {
+        long maxSize = getMaxBodySize();
+        try {
+          long length = ((HttpMethodBase) _method).getResponseContentLength();
+          if (maxSize >= 0 && length > maxSize) {
+            throw ResponseBody.tooLarge(length, maxSize);
+          }
+          _body = ResponseBody.read(_method.getResponseBodyAsStream(), maxSize);
+        } catch (IOException ioe) {
+          TestUtil.logTrace("[HttpResponse] Aborting connection: " + ioe);
+          _method.abort();
+          throw ioe;
+        }
+      }
+    }
+    return _body;
+  }
+
   /*
    * Private Methods
    * ==========================================================================
    */
 
+  private boolean isPart() {
+    return _partStatusCode != -1;
+  }
+
+  private int getStatus() {
+    return isPart() ? _partStatusCode : _method.getStatusCode();
+  }
+
   /**
    * Returns the response body using the encoding returned in the response.
    *
    * @return encoded response String.
    */
   private String getEncodedResponse() throws IOException {
-    if (_responseBody == null) {
-      _responseBody = Util.getEncodedStringFromStream(
-          _method.getResponseBodyAsStream(), getResponseEncoding());
+    return getBody().getString(getResponseEncoding());
+  }
+
+  private synchronized byte[] getEncodedBytes() throws IOException {
+    if (_encodedBytes == null) {
+      _encodedBytes = getEncodedResponse().getBytes();
     }
-    return _responseBody;
+    return _encodedBytes;
   }
 }
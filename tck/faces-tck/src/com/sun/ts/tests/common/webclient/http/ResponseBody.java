@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.tests.common.webclient.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The entity of a response, read once from the connection and kept as bytes.
+ * <p>
+ * The entity is read into a growable buffer that is reused by the following
+ * responses read by the same thread, and then copied to an array of its exact
+ * size. Strings are decoded from the bytes when first asked for and kept per
+ * charset, and streams read the bytes without copying them.
+ * </p>
+ */
+final class ResponseBody {
+
+  /**
+   * Size of the buffer a thread starts reading with
+   */
+  private static final int INITIAL_SIZE = 8 * 1024;
+
+  /**
+   * Largest buffer kept by a thread once a response was read
+   */
+  private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+  /**
+   * Largest array the virtual machine can allocate
+   */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+  private final byte[] _bytes;
+
+  // decoded strings, by charset
+  private final Map<String, String> _strings = new HashMap<String, String>(2);
+
+  ResponseBody(byte[] bytes) {
+    _bytes = bytes;
+  }
+
+  /**
+   * Reads the stream to its end.
+   *
+   * @param in
+   *          the entity stream, or <code>null</code> if there is no entity
+   * @param maxSize
+   *          the maximum number of bytes read, or a value below 0 for no limit
+   * @return the entity
+   * @throws IOException
+   *           if the stream cannot be read or holds more than maxSize bytes
+   */
+  static ResponseBody read(InputStream in, long maxSize) throws IOException {
+    if (in == null) {
+      return new ResponseBody(new byte[0]);
+    }
+    byte[] buffer = BUFFER.get();
+    if (buffer == null) {
+      buffer = new byte[INITIAL_SIZE];
+    }
+    int length = 0;
+    try {
+      for (int n; (n = in.read(buffer, length, buffer.length - length)) != -1;) {
+        length += n;
+        if (maxSize >= 0 && length > maxSize) {
+          throw tooLarge(length, maxSize);
+        }
+        if (length == buffer.length) {
+          buffer = grow(buffer, maxSize);
+        }
+      }
+    } finally {
+      BUFFER.set(buffer.length <= MAX_POOLED_SIZE ? buffer : null);
+    }
+    byte[] bytes = new byte[length];
+    System.arraycopy(buffer, 0, bytes, 0, length);
+    return new ResponseBody(bytes);
+  }
+
+  static IOException tooLarge(long size, long maxSize) {
+    return new IOException("[ResponseBody] Response body of " + size
+        + " bytes or more exceeds the maximum of " + maxSize + " bytes set by '"
+        + HttpResponse.MAX_BODY_SIZE_PROP + "'");
+  }
+
+  byte[] getBytes() {
+    return _bytes;
+  }
+
+  int getLength() {
+    return _bytes.length;
+  }
+
+  /**
+   * Returns a stream over the bytes of the entity, without copying them.
+   */
+  InputStream getStream() {
+    return new ByteArrayInputStream(_bytes, 0, _bytes.length);
+  }
+
+  /**
+   * Returns the entity decoded using the charset, decoding it only the first
+   * time the charset is asked for.
+   *
+   * @throws UnsupportedEncodingException
+   *           if the charset is not supported
+   */
+  synchronized String getString(String charset)
+      throws UnsupportedEncodingException {
+    String s = _strings.get(charset);
+    if (s == null) {
+      s = new String(_bytes, 0, _bytes.length, charset);
+      _strings.put(charset, s);
+    }
+    return s;
+  }
+
+  private static byte[] grow(byte[] buffer, long maxSize)
+      throws IOException {
+    if (buffer.length >= MAX_ARRAY_SIZE) {
+      throw tooLarge(buffer.length, MAX_ARRAY_SIZE);
+    }
+    long size = (long) buffer.length * 2;
+    if (maxSize >= 0 && size > maxSize + 1) {
+      // one more byte than the maximum is enough to tell it was exceeded
+      size = Math.max(maxSize + 1, buffer.length + 1);
+    }
+    byte[] grown = new byte[(int) Math.min(size, MAX_ARRAY_SIZE)];
+    System.arraycopy(buffer, 0, grown, 0, buffer.length);
+    return grown;
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.tests.common.webclient.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds every occurrence of a set of search strings in a text with a single
+ * pass over the text, using an Aho-Corasick automaton.
+ * <p>
+ * The automaton is built over the lower-cased search strings and runs over
+ * the text lower-cased one character at a time, so that case insensitive
+ * strings are matched directly. An occurrence of a case sensitive string is
+ * verified against the original text before it is recorded.
+ * </p>
+ */
+public class SearchStringMatcher {
+
+  private static final int[] NONE = new int[0];
+
+  // the search strings, by identifier
+  private final List<String> patterns = new ArrayList<String>();
+
+  private final List<Boolean> ignoreCase = new ArrayList<Boolean>();
+
+  // the identifiers of the search strings, by case sensitivity and string
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+  // the trie, node 0 being the root
+  private final List<Node> nodes = new ArrayList<Node>();
+
+  // the start indexes of the occurrences, by identifier
+  private int[][] matches;
+
+  private int[] matchCounts;
+
+  private String text;
+
+  /** Creates new SearchStringMatcher */
+  public SearchStringMatcher() {
+    nodes.add(new Node());
+  }
+
+  /*
+   * public methods
+   * ========================================================================
+   */
+
+  /**
+   * Adds a search string. Must be called before {@link #scan(String)}.
+   *
+   * @param pattern
+   *          the search string
+   * @param ignoreCase
+   *          whether the case of the search string is ignored
+   */
+  public void add(String pattern, boolean ignoreCase) {
+    if (matches != null) {
+      throw new IllegalStateException("The text was scanned already");
+    }
+    String key = (ignoreCase ? 'i' : 's') + pattern;
+    if (ids.containsKey(key)) {
+      return;
+    }
+    int id = patterns.size();
+    ids.put(key, Integer.valueOf(id));
+    patterns.add(pattern);
+    this.ignoreCase.add(Boolean.valueOf(ignoreCase));
+
+    int state = 0;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = Character.toLowerCase(pattern.charAt(i));
+      int next = nodes.get(state).next(c);
+      if (next < 0) {
+        next = nodes.size();
+        nodes.add(new Node());
+        nodes.get(state).put(c, next);
+      }
+      state = next;
+    }
+    nodes.get(state).addOutput(id);
+  }
+
+  /**
+   * Adds the search strings of a list, if any.
+   *
+   * @param list
+   *          the search strings, or <code>null</code>
+   * @param ignoreCase
+   *          whether the case of the search strings is ignored
+   */
+  public void addAll(List<String> list, boolean ignoreCase) {
+    if (list != null) {
+      for (int i = 0, n = list.size(); i < n; i++) {
+        add(list.get(i), ignoreCase);
+      }
+    }
+  }
+
+  /**
+   * Records the occurrences of all search strings in the text.
+   *
+   * @param text
+   *          the text to scan
+   */
+  public void scan(String text) {
+    if (matches != null) {
+      throw new IllegalStateException("The text was scanned already");
+    }
+    this.text = text;
+    matches = new int[patterns.size()][];
+    matchCounts = new int[patterns.size()];
+    Arrays.fill(matches, NONE);
+    link();
+
+    int state = 0;
+    for (int i = 0, length = text.length(); i < length; i++) {
+      char c = Character.toLowerCase(text.charAt(i));
+      int next;
+      while ((next = nodes.get(state).next(c)) < 0 && state != 0) {
+        state = nodes.get(state).fail;
+      }
+      state = next < 0 ? 0 : next;
+      for (int out = nodes.get(state).outputs == null
+          ? nodes.get(state).output
+          : state; out > 0; out = nodes.get(out).output) {
+        Node node = nodes.get(out);
+        for (int j = 0; j < node.outputs.length; j++) {
+          record(node.outputs[j], i + 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the first occurrence of a search string at or after
+   * the given index, the way <code>String.indexOf(String, int)</code> would.
+   *
+   * @param pattern
+   *          a search string that was added
+   * @param ignoreCase
+   *          whether it was added as a case insensitive string
+   * @param fromIndex
+   *          the index to start from
+   * @return the index of the occurrence, or -1 if there is none
+   */
+  public int indexOf(String pattern, boolean ignoreCase, int fromIndex) {
+    int id = id(pattern, ignoreCase);
+    if (fromIndex < 0) {
+      fromIndex = 0;
+    }
+    if (patterns.get(id).length() == 0) {
+      // the empty string occurs at every index
+      return Math.min(fromIndex, text.length());
+    }
+    int[] starts = matches[id];
+    int idx = Arrays.binarySearch(starts, 0, matchCounts[id], fromIndex);
+    if (idx < 0) {
+      idx = -idx - 1;
+    }
+    return idx < matchCounts[id] ? starts[idx] : -1;
+  }
+
+  /**
+   * Returns the indexes of all occurrences of a search string, overlapping
+   * ones included, in ascending order.
+   *
+   * @param pattern
+   *          a search string that was added
+   * @param ignoreCase
+   *          whether it was added as a case insensitive string
+   * @return the indexes of the occurrences
+   */
+  public int[] getMatches(String pattern, boolean ignoreCase) {
+    int id = id(pattern, ignoreCase);
+    return Arrays.copyOf(matches[id], matchCounts[id]);
+  }
+
+  /**
+   * Returns the length of the scanned text.
+   *
+   * @return the length of the text
+   */
+  public int getTextLength() {
+    return text.length();
+  }
+
+  /*
+   * private methods
+   * ========================================================================
+   */
+
+  private int id(String pattern, boolean ignoreCase) {
+    if (matches == null) {
+      throw new IllegalStateException("The text was not scanned yet");
+    }
+    Integer id = ids.get((ignoreCase ? 'i' : 's') + pattern);
+    if (id == null) {
+      throw new IllegalArgumentException(
+          "Not a search string: '" + pattern + "'");
+    }
+    return id.intValue();
+  }
+
+  private void record(int id, int end) {
+    String pattern = patterns.get(id);
+    int start = end - pattern.length();
+    if (!ignoreCase.get(id).booleanValue()
+        && !text.regionMatches(start, pattern, 0, pattern.length())) {
+      // matched only when the case is ignored
+      return;
+    }
+    if (matchCounts[id] == matches[id].length) {
+      matches[id] = Arrays.copyOf(matches[id],
+          Math.max(4, matches[id].length * 2));
+    }
+    matches[id][matchCounts[id]++] = start;
+  }
+
+  /**
+   * Computes the failure links of the trie breadth first, and links every
+   * node to the nearest node on its failure path that ends a search string.
+   */
+  private void link() {
+    int[] queue = new int[nodes.size()];
+    int head = 0;
+    int tail = 0;
+    Node root = nodes.get(0);
+    for (int i = 0; i < root.size; i++) {
+      queue[tail++] = root.targets[i];
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      Node node = nodes.get(state);
+      Node fail = nodes.get(node.fail);
+      node.output = fail.outputs != null ? node.fail : fail.output;
+      for (int i = 0; i < node.size; i++) {
+        char c = node.labels[i];
+        int child = node.targets[i];
+        int f = node.fail;
+        int next;
+        while ((next = nodes.get(f).next(c)) < 0 && f != 0) {
+          f = nodes.get(f).fail;
+        }
+        nodes.get(child).fail = next < 0 ? 0 : next;
+        queue[tail++] = child;
+      }
+    }
+  }
+
+  /**
+   * A node of the trie. Most nodes have a single child, so the transitions
+   * are kept in small arrays searched linearly.
+   */
+  private static final class Node {
+
+    char[] labels = new char[1];
+
+    int[] targets = new int[1];
+
+    int size;
+
+    // node reached on a mismatch
+    int fail;
+
+    // nearest node on the failure path ending a search string, or 0
+    int output;
+
+    // the search strings ending at this node, or null
+    int[] outputs;
+
+    int next(char c) {
+      for (int i = 0; i < size; i++) {
+        if (labels[i] == c) {
+          return targets[i];
+        }
+      }
+      return -1;
+    }
+
+    void put(char c, int target) {
+      if (size == labels.length) {
+        labels = Arrays.copyOf(labels, size * 2);
+        targets = Arrays.copyOf(targets, size * 2);
+      }
+      labels[size] = c;
+      targets[size++] = target;
+    }
+
+    void addOutput(int id) {
+      if (outputs == null) {
+        outputs = new int[] { id };
+      } else {
+        outputs = Arrays.copyOf(outputs, outputs.length + 1);
+        outputs[outputs.length - 1] = id;
+      }
+    }
+  }
+}
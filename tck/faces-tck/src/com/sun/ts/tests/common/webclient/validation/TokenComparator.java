@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+
+package com.sun.ts.tests.common.webclient.validation;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Compares two character streams token by token, where tokens are separated
+ * by the same whitespace characters a default <code>StringTokenizer</code>
+ * uses. Both streams are read incrementally and the comparison stops at the
+ * first difference, so neither stream is held in memory as a whole.
+ */
+public class TokenComparator {
+
+  /**
+   * Number of characters of context reported on each side of a mismatch.
+   */
+  public static final int CONTEXT_LENGTH = 40;
+
+  /** Creates new TokenComparator */
+  private TokenComparator() {
+  }
+
+  /*
+   * public methods
+   * ========================================================================
+   */
+
+  /**
+   * Compares the tokens of the expected and actual streams.
+   *
+   * @param expected
+   *          the expected content, i.e. the goldenfile
+   * @param actual
+   *          the actual content, i.e. the response body
+   * @return <code>null</code> if both streams contain the same tokens,
+   *         otherwise a description of the first difference.
+   * @throws IOException
+   *           if an error occurs reading either stream
+   */
+  public static Mismatch compare(Reader expected, Reader actual)
+      throws IOException {
+    TokenReader exp = new TokenReader(expected);
+    TokenReader res = new TokenReader(actual);
+    int index = 0;
+    while (true) {
+      boolean hasExp = exp.next();
+      boolean hasRes = res.next();
+      if (!hasExp && !hasRes) {
+        return null;
+      }
+      if (!hasExp || !hasRes || !exp.tokenEquals(res)) {
+        return new Mismatch(index, exp, res);
+      }
+      index++;
+    }
+  }
+
+  /*
+   * public classes
+   * ========================================================================
+   */
+
+  /**
+   * Describes the first difference found between two streams.
+   */
+  public static class Mismatch {
+
+    private final int _tokenIndex;
+
+    private final String _expectedToken;
+
+    private final String _actualToken;
+
+    private final long _expectedOffset;
+
+    private final long _actualOffset;
+
+    private final int _expectedLine;
+
+    private final int _actualLine;
+
+    private final String _expectedContext;
+
+    private final String _actualContext;
+
+    Mismatch(int tokenIndex, TokenReader exp, TokenReader res)
+        throws IOException {
+      _tokenIndex = tokenIndex;
+      _expectedToken = exp.token();
+      _actualToken = res.token();
+      _expectedOffset = exp.offset();
+      _actualOffset = res.offset();
+      _expectedLine = exp.line();
+      _actualLine = res.line();
+      _expectedContext = exp.context();
+      _actualContext = res.context();
+    }
+
+    /**
+     * @return zero based index of the first token that differs
+     */
+    public int getTokenIndex() {
+      return _tokenIndex;
+    }
+
+    /**
+     * @return the expected token, or <code>null</code> if the expected
+     *         stream ended first
+     */
+    public String getExpectedToken() {
+      return _expectedToken;
+    }
+
+    /**
+     * @return the actual token, or <code>null</code> if the actual stream
+     *         ended first
+     */
+    public String getActualToken() {
+      return _actualToken;
+    }
+
+    /**
+     * @return character offset of the differing token in the expected stream
+     */
+    public long getExpectedOffset() {
+      return _expectedOffset;
+    }
+
+    /**
+     * @return character offset of the differing token in the actual stream
+     */
+    public long getActualOffset() {
+      return _actualOffset;
+    }
+
+    /**
+     * @return the text surrounding the difference in the expected stream
+     */
+    public String getExpectedContext() {
+      return _expectedContext;
+    }
+
+    /**
+     * @return the text surrounding the difference in the actual stream
+     */
+    public String getActualContext() {
+      return _actualContext;
+    }
+
+    public String toString() {
+      StringBuffer sb = new StringBuffer(255);
+      sb.append("First difference at token #").append(_tokenIndex);
+      sb.append("\n            Goldenfile token: ")
+          .append(_expectedToken == null ? "<end of goldenfile>"
+              : _expectedToken);
+      sb.append(" (offset ").append(_expectedOffset).append(", line ")
+          .append(_expectedLine).append(')');
+      sb.append("\n            Response token:   ")
+          .append(_actualToken == null ? "<end of response>" : _actualToken);
+      sb.append(" (offset ").append(_actualOffset).append(", line ")
+          .append(_actualLine).append(')');
+      sb.append("\n            Goldenfile context: ...")
+          .append(_expectedContext).append("...");
+      sb.append("\n            Response context:   ...")
+          .append(_actualContext).append("...");
+      return sb.toString();
+    }
+  }
+
+  /*
+   * private classes
+   * ========================================================================
+   */
+
+  /**
+   * Splits a stream into whitespace delimited tokens, keeping track of the
+   * position of the current token and of the characters read before it.
+   */
+  private static class TokenReader {
+
+    private final Reader _in;
+
+    private final char[] _buf = new char[8192];
+
+    private int _pos = 0;
+
+    private int _limit = 0;
+
+    // characters read so far, used for offsets
+    private long _read = 0L;
+
+    private int _line = 1;
+
+    private final StringBuilder _token = new StringBuilder(64);
+
+    private boolean _hasToken = false;
+
+    private long _tokenOffset = 0L;
+
+    private int _tokenLine = 1;
+
+    // the last CONTEXT_LENGTH characters read before the current token
+    private final char[] _history = new char[CONTEXT_LENGTH];
+
+    private int _historyLen = 0;
+
+    private int _historyPos = 0;
+
+    TokenReader(Reader in) {
+      _in = in;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return false if the end of the stream was reached
+     */
+    boolean next() throws IOException {
+      for (int i = 0; i < _token.length(); i++) {
+        remember(_token.charAt(i));
+      }
+      _token.setLength(0);
+      int ch;
+      while ((ch = read()) != -1 && isDelimiter((char) ch)) {
+        remember((char) ch);
+      }
+      _tokenOffset = _read - 1;
+      _tokenLine = _line;
+      _hasToken = ch != -1;
+      if (!_hasToken) {
+        _tokenOffset = _read;
+        return false;
+      }
+      _token.append((char) ch);
+      while ((ch = peek()) != -1 && !isDelimiter((char) ch)) {
+        _token.append((char) read());
+      }
+      return true;
+    }
+
+    boolean tokenEquals(TokenReader other) {
+      StringBuilder a = _token;
+      StringBuilder b = other._token;
+      if (a.length() != b.length()) {
+        return false;
+      }
+      for (int i = a.length() - 1; i >= 0; i--) {
+        if (a.charAt(i) != b.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String token() {
+      return _hasToken ? _token.toString() : null;
+    }
+
+    long offset() {
+      return _tokenOffset;
+    }
+
+    int line() {
+      return _tokenLine;
+    }
+
+    /**
+     * Returns the characters preceding the current token, the token itself
+     * and up to CONTEXT_LENGTH following characters. Consumes the stream.
+     */
+    String context() throws IOException {
+      StringBuilder sb = new StringBuilder(CONTEXT_LENGTH * 3);
+      int start = _historyLen < CONTEXT_LENGTH ? 0 : _historyPos;
+      for (int i = 0; i < _historyLen; i++) {
+        sb.append(_history[(start + i) % CONTEXT_LENGTH]);
+      }
+      sb.append(_token);
+      int ch;
+      for (int i = 0; i < CONTEXT_LENGTH && (ch = read()) != -1; i++) {
+        sb.append((char) ch);
+      }
+      return sb.toString();
+    }
+
+    private void remember(char c) {
+      _history[_historyPos] = c;
+      _historyPos = (_historyPos + 1) % CONTEXT_LENGTH;
+      if (_historyLen < CONTEXT_LENGTH) {
+        _historyLen++;
+      }
+    }
+
+    private int peek() throws IOException {
+      if (_pos == _limit && !fill()) {
+        return -1;
+      }
+      return _buf[_pos];
+    }
+
+    private int read() throws IOException {
+      if (_pos == _limit && !fill()) {
+        return -1;
+      }
+      char c = _buf[_pos++];
+      _read++;
+      if (c == '\n') {
+        _line++;
+      }
+      return c;
+    }
+
+    private boolean fill() throws IOException {
+      int n;
+      do {
+        n = _in.read(_buf, 0, _buf.length);
+      } while (n == 0);
+      if (n < 0) {
+        return false;
+      }
+      _pos = 0;
+      _limit = n;
+      return true;
+    }
+
+    private static boolean isDelimiter(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+  }
+}
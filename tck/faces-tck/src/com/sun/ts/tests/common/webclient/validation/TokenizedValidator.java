@@ -23,7 +23,8 @@ package com.sun.ts.tests.common.webclient.validation;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.StringTokenizer;
+import java.io.Reader;
+import java.io.StringReader;
 
 import com.sun.ts.lib.util.TestUtil;
 import com.sun.ts.tests.common.webclient.Goldenfile;
@@ -33,7 +34,7 @@ import com.sun.ts.tests.common.webclient.Goldenfile;
  * This class provides all of the functionality of the
  * WebValidatorBase class.  Additionally, it will compare
  * the server's response body with the test case's configured
- * goldenfile using a StringTokenizer.
+ * goldenfile token by token.
  * </pre>
  */
 public class TokenizedValidator extends WebValidatorBase {
@@ -56,14 +57,14 @@ public class TokenizedValidator extends WebValidatorBase {
    */
 
   /**
-   * Compare the server response and golenfile using a StringTokenizer.
+   * Compare the server response and goldenfile token by token. Both are read
+   * incrementally and the comparison stops at the first difference.
    *
    * @return true if response and goldenfile are the same.
    * @throws IOException
    *           if an error occurs will processing the Goldenfile
    */
   protected boolean checkGoldenfile() throws IOException {
-    String gf;
     String path = _case.getGoldenfilePath();
     String enc = _res.getResponseEncoding();
 
@@ -73,57 +74,43 @@ public class TokenizedValidator extends WebValidatorBase {
 
     Goldenfile file = new Goldenfile(_case.getGoldenfilePath(), enc);
 
-    try {
-      gf = file.getGoldenFileAsString();
-    } catch (IOException ioe) {
-      TestUtil
-          .logErr("[TokenizedValidator] Unexpected exception while accessing "
-              + "goldenfile! " + ioe.toString());
-      return false;
-    }
-
-    String response = _res.getResponseBodyAsString();
-    StringTokenizer gfTokenizer = new StringTokenizer(gf);
-    StringTokenizer resTokenizer = new StringTokenizer(response);
-    int gfCount = gfTokenizer.countTokens();
-    int resCount = resTokenizer.countTokens();
-
     // Logic to handle the recording of goldenfiles.
-    if (gf.equals("NO GOLDENFILE FOUND") && Boolean.getBoolean(RECORD_GF)) {
+    if (file.isMissing() && Boolean.getBoolean(RECORD_GF)) {
 
       TestUtil
           .logTrace("[TokenizedValidator][INFO] RECORDING GOLDENFILE: " + path);
       OutputStreamWriter out = new OutputStreamWriter(
           new FileOutputStream(path), enc);
-      out.write(response);
+      out.write(_res.getResponseBodyAsString());
       out.flush();
       out.close();
     }
 
-    // If the token counts are the same, continue checking
-    // each individual token, otherwise, immediately fail.
-    if (gfCount == resCount) {
-      while (gfTokenizer.hasMoreTokens()) {
-        String exp = gfTokenizer.nextToken();
-        String res = resTokenizer.nextToken();
-        if (!exp.equals(res)) {
-          StringBuffer sb = new StringBuffer(255);
-          sb.append("[TokenizedValidator]: Server's response and ");
-          sb.append("goldenfile to not match!\n");
-          sb.append("\n            Goldenfile token: ").append(exp);
-          sb.append("\n            Response token:   ").append(res);
-          TestUtil.logErr(sb.toString());
-          dumpResponseInfo(response, gf);
-          return false;
-        }
-      }
-    } else {
+    TokenComparator.Mismatch mismatch;
+    Reader gf = null;
+    try {
+      gf = file.getGoldenFileAsReader();
+      mismatch = TokenComparator.compare(gf,
+          new StringReader(_res.getResponseBodyAsString()));
+    } catch (IOException ioe) {
       TestUtil
-          .logErr("[TokenizedValidator]: Token count between server response "
-              + "and goldenfile do not match.\n Response Token" + "count: "
-              + resCount + "\nGoldenfile Token count: " + gfCount);
+          .logErr("[TokenizedValidator] Unexpected exception while accessing "
+              + "goldenfile! " + ioe.toString());
+      return false;
+    } finally {
+      if (gf != null) {
+        gf.close();
+      }
+    }
 
-      dumpResponseInfo(response, gf);
+    if (mismatch != null) {
+      StringBuffer sb = new StringBuffer(255);
+      sb.append("[TokenizedValidator]: Server's response and ");
+      sb.append("goldenfile to not match!\n");
+      sb.append("\n            ").append(mismatch);
+      TestUtil.logErr(sb.toString());
+      dumpResponseInfo(_res.getResponseBodyAsString(),
+          file.getGoldenFileAsString());
       return false;
     }
     TestUtil.logTrace("[TokenizedValidator]: Server's response matches the "
@@ -21,6 +21,7 @@
 package com.sun.ts.tests.common.webclient.validation;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -65,6 +66,12 @@ public abstract class WebValidatorBase implements ValidationStrategy {
    */
   protected WebTestCase _case = null;
 
+  /**
+   * The occurrences of all search strings of the test case in the response,
+   * found in a single scan the first time a search string is checked.
+   */
+  private SearchStringMatcher _matcher = null;
+
   /**
    * <tt>validate</tt> Will validate the response against the configured
    * TestCase.
@@ -84,6 +91,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
     _res = testCase.getResponse();
     _req = testCase.getRequest();
     _case = testCase;
+    _matcher = null;
 
     // begin the check
     try {
@@ -245,12 +253,12 @@ public abstract class WebValidatorBase implements ValidationStrategy {
     List list = _case.getSearchStrings();
     boolean found = true;
     if (list != null && !list.isEmpty()) {
-      String responseBody = _res.getResponseBodyAsRawString();
+      SearchStringMatcher matcher = getSearchStringMatcher();
 
       String search = null;
 
-      for (int i = 0, n = list.size(), startIdx = 0, bodyLength = responseBody
-          .length(); i < n; i++) {
+      for (int i = 0, n = list.size(), startIdx = 0, bodyLength = matcher
+          .getTextLength(); i < n; i++) {
 
         // set the startIdx to the same value as the body length
         // and let the test fail (prevents index based runtime
@@ -260,7 +268,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
         }
 
         search = (String) list.get(i);
-        int searchIdx = responseBody.indexOf(search, startIdx);
+        int searchIdx = matcher.indexOf(search, false, startIdx);
 
         TestUtil.logTrace(
             "[WebValidatorBase] Scanning response for " + "search string: '"
@@ -274,7 +282,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
           sb.append(startIdx);
           sb.append("\n[WebValidatorBase] Server's response:\n");
           sb.append("-------------------------------------------\n");
-          sb.append(responseBody);
+          sb.append(_res.getResponseBodyAsRawString());
           sb.append("\n-------------------------------------------\n");
           TestUtil.logErr(sb.toString());
           break;
@@ -323,12 +331,12 @@ public abstract class WebValidatorBase implements ValidationStrategy {
     List list = _case.getSearchStringsNoCase();
     boolean found = true;
     if (list != null && !list.isEmpty()) {
-      String responseBody = _res.getResponseBodyAsRawString();
+      SearchStringMatcher matcher = getSearchStringMatcher();
 
       String search = null;
 
-      for (int i = 0, n = list.size(), startIdx = 0, bodyLength = responseBody
-          .length(); i < n; i++) {
+      for (int i = 0, n = list.size(), startIdx = 0, bodyLength = matcher
+          .getTextLength(); i < n; i++) {
 
         // set the startIdx to the same value as the body length
         // and let the test fail (prevents index based runtime
@@ -338,8 +346,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
         }
 
         search = (String) list.get(i);
-        int searchIdx = responseBody.toLowerCase().indexOf(search.toLowerCase(),
-            startIdx);
+        int searchIdx = matcher.indexOf(search, true, startIdx);
 
         TestUtil.logTrace(
             "[WebValidatorBase] Scanning response for " + "search string: '"
@@ -353,7 +360,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
           sb.append(startIdx);
           sb.append("\n[WebValidatorBase] Server's response:\n");
           sb.append("-------------------------------------------\n");
-          sb.append(responseBody);
+          sb.append(_res.getResponseBodyAsRawString());
           sb.append("\n-------------------------------------------\n");
           TestUtil.logErr(sb.toString());
           break;
@@ -397,14 +404,14 @@ public abstract class WebValidatorBase implements ValidationStrategy {
     List list = _case.getUnorderedSearchStrings();
     boolean found = true;
     if (list != null && !list.isEmpty()) {
-      String responseBody = _res.getResponseBodyAsRawString();
+      SearchStringMatcher matcher = getSearchStringMatcher();
 
       String search = null;
 
       for (int i = 0, n = list.size(); i < n; i++) {
 
         search = (String) list.get(i);
-        int searchIdx = responseBody.indexOf(search);
+        int searchIdx = matcher.indexOf(search, false, 0);
 
         TestUtil.logTrace("[WebValidatorBase] Scanning response for "
             + "search string: '" + search + "'...");
@@ -416,7 +423,7 @@ public abstract class WebValidatorBase implements ValidationStrategy {
           sb.append("response: '").append(search);
           sb.append("\n[WebValidatorBase] Server's response:\n");
           sb.append("-------------------------------------------\n");
-          sb.append(responseBody);
+          sb.append(_res.getResponseBodyAsRawString());
           sb.append("\n-------------------------------------------\n");
           TestUtil.logErr(sb.toString());
           break;
@@ -456,21 +463,21 @@ public abstract class WebValidatorBase implements ValidationStrategy {
   protected boolean checkUnexpectedSearchStrings() throws IOException {
     List list = _case.getUnexpectedSearchStrings();
     if (list != null && !list.isEmpty()) {
-      String responseBody = _res.getResponseBodyAsRawString();
+      SearchStringMatcher matcher = getSearchStringMatcher();
       Iterator iter = list.iterator();
       while (iter.hasNext()) {
         String search = (String) iter.next();
         TestUtil.logTrace("[WebValidatorBase] Scanning response.  The following"
             + " string should not be present in the response: '" + search
             + "'");
-        if (responseBody.indexOf(search) > -1) {
+        if (matcher.indexOf(search, false, 0) > -1) {
           StringBuffer sb = new StringBuffer(255);
           sb.append("[WebValidatorBase] Found the following unexpected ");
           sb.append("search string in the server's ");
           sb.append("response: '").append(search).append("'");
           sb.append("\n[WebValidatorBase] Server's response:\n");
           sb.append("-------------------------------------------\n");
-          sb.append(responseBody);
+          sb.append(_res.getResponseBodyAsRawString());
           sb.append("\n-------------------------------------------\n");
           TestUtil.logErr(sb.toString());
           return false;
@@ -480,6 +487,47 @@ public abstract class WebValidatorBase implements ValidationStrategy {
     return true;
   }
 
+  /**
+   * Returns the occurrences of the ordered, case insensitive, unordered and
+   * unexpected search strings of the test case in the response. The response
+   * is scanned for all of them at once the first time this method is called
+   * for a test case.
+   *
+   * @return the matcher holding the occurrences
+   * @throws IOException
+   *           if an IO error occurs reading the response
+   */
+  protected SearchStringMatcher getSearchStringMatcher() throws IOException {
+    if (_matcher == null) {
+      SearchStringMatcher matcher = new SearchStringMatcher();
+      matcher.addAll(_case.getSearchStrings(), false);
+      matcher.addAll(_case.getSearchStringsNoCase(), true);
+      matcher.addAll(_case.getUnorderedSearchStrings(), false);
+      matcher.addAll(_case.getUnexpectedSearchStrings(), false);
+      matcher.scan(_res.getResponseBodyAsRawString());
+      if (TestUtil.traceflag) {
+        logMatches(matcher, _case.getSearchStrings(), false);
+        logMatches(matcher, _case.getSearchStringsNoCase(), true);
+        logMatches(matcher, _case.getUnorderedSearchStrings(), false);
+        logMatches(matcher, _case.getUnexpectedSearchStrings(), false);
+      }
+      _matcher = matcher;
+    }
+    return _matcher;
+  }
+
+  private void logMatches(SearchStringMatcher matcher, List<String> list,
+      boolean ignoreCase) {
+    if (list != null) {
+      for (int i = 0, n = list.size(); i < n; i++) {
+        String search = list.get(i);
+        TestUtil.logTrace("[WebValidatorBase] Search string: '" + search + "'"
+            + (ignoreCase ? " (case insensitive)" : "") + " occurs at index: "
+            + Arrays.toString(matcher.getMatches(search, ignoreCase)));
+      }
+    }
+  }
+
   /**
    * <code>checkGoldenFile</code> compare the server's response with the
    * configured goldenfile
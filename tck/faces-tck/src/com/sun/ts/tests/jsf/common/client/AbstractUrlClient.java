@@ -19,6 +19,13 @@
  */
 package com.sun.ts.tests.jsf.common.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.ts.lib.util.TestUtil;
 import com.sun.ts.tests.common.webclient.BaseUrlClient;
 import com.sun.ts.tests.common.webclient.WebTestCase;
 import com.sun.ts.tests.common.webclient.http.HttpRequest;
@@ -42,6 +49,20 @@ public abstract class AbstractUrlClient extends BaseUrlClient {
 
   private String myCharacterSet;
 
+  // the test cases that may be run in a batch, see setBatchedTests
+  private Set<String> _batchedTests;
+
+  // the batched test cases in the order they are run, see getBatchedTests
+  private String[] _batchOrder;
+
+  /**
+   * Test properties that change the request or response of an API test in a
+   * way a batched request cannot.
+   */
+  private static final String[] NOT_BATCHED = { REQUEST_HEADERS, CONTENT,
+      REASON_PHRASE, EXPECTED_HEADERS, UNEXPECTED_HEADERS, USE_SAVED_STATE,
+      SAVE_STATE, BASIC_AUTH_USER };
+
   protected void setTestProperties(WebTestCase testCase) {
 
     setStandardProperties(TEST_PROPS.getProperty(STANDARD), testCase);
@@ -71,18 +92,22 @@ public abstract class AbstractUrlClient extends BaseUrlClient {
 
     // set the request
     StringBuffer sb = new StringBuffer(50);
+    ApiTestBatch batch = null;
     if ((_servlet != null)
         && (TEST_PROPS.getProperty(DONOTUSEServletName) == null)) {
       sb.append(GET).append(_contextRoot).append(SL);
       sb.append(_servlet).append("?testname=").append(testValue);
       sb.append(HTTP10);
+      batch = getApiTestBatch();
     } else {
       sb.append(GET).append(_contextRoot).append(SL);
       sb.append(testValue).append(HTTP10);
     }
     System.out.println("REQUEST LINE: " + sb.toString());
 
-    HttpRequest req = new HttpRequest(sb.toString(), _hostname, _port);
+    HttpRequest req = batch == null
+        ? new HttpRequest(sb.toString(), _hostname, _port)
+        : batch.newRequest(sb.toString(), testValue);
     setUserAgent(req);
 
     // Set Locale if provide.
@@ -105,6 +130,73 @@ public abstract class AbstractUrlClient extends BaseUrlClient {
 
   }
 
+  /**
+   * Returns the batch the request of the current API test is answered from,
+   * or null if batches are disabled or the test has to send a request of its
+   * own.
+   */
+  private ApiTestBatch getApiTestBatch() {
+    int size = getApiTestBatchSize();
+    if (size < 2 || !isBatchable()) {
+      return null;
+    }
+    return new ApiTestBatch(_hostname, _port, _contextRoot + SL + _servlet,
+        JSF_USER_AGENT, getBatchedTests(), size);
+  }
+
+  /**
+   * Returns whether the API test set up in TEST_PROPS can be run in a batch.
+   */
+  private boolean isBatchable() {
+    String apiTest = TEST_PROPS.getProperty(APITEST);
+    if (apiTest == null || _batchedTests == null
+        || !_batchedTests.contains(apiTest)
+        || TEST_PROPS.getProperty(DONOTUSEServletName) != null
+        || TEST_PROPS.getProperty(FOLLOW_REDIRECT) != null
+        || getMyLocale() != null || getMyCharacterSet() != null) {
+      return false;
+    }
+    for (int i = 0; i < NOT_BATCHED.length; i++) {
+      if (TEST_PROPS.getProperty(NOT_BATCHED[i]) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int getApiTestBatchSize() {
+    String size = _props == null ? null
+        : _props.getProperty(ApiTestBatch.BATCH_SIZE);
+    if (size == null || size.trim().length() == 0) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(size.trim());
+    } catch (NumberFormatException nfe) {
+      TestUtil.logErr("Invalid value for " + ApiTestBatch.BATCH_SIZE + ": "
+          + size + ", API tests are not batched");
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the test cases declared by setBatchedTests, in the order they are
+   * run, leaving out the excluded ones.
+   */
+  private String[] getBatchedTests() {
+    if (_batchOrder == null) {
+      List<String> tests = new ArrayList<String>();
+      String[] testCaseNames = getTestCaseNames(_props);
+      for (int i = 0; i < testCaseNames.length; i++) {
+        if (_batchedTests.contains(testCaseNames[i])) {
+          tests.add(testCaseNames[i]);
+        }
+      }
+      _batchOrder = tests.toArray(new String[tests.size()]);
+    }
+    return _batchOrder;
+  }
+
   /**
    * Consists of a test name, a request, and a goldenfile.
    * 
@@ -170,6 +262,20 @@ public abstract class AbstractUrlClient extends BaseUrlClient {
     return _servlet;
   }
 
+  /**
+   * Declares the test cases of the client that may be run in a batch, see
+   * <code>jsf.api.batch.size</code>. Each of them must run the API test of the
+   * same name without setting anything else up, and the servlet must extend
+   * <code>HttpTCKServlet</code>. The API tests of other test cases, and all
+   * those of clients that declare none, are sent a request of their own.
+   *
+   * @param testNames
+   *          - the names of the test cases
+   */
+  protected void setBatchedTests(String[] testNames) {
+    _batchedTests = new HashSet<String>(Arrays.asList(testNames));
+  }
+
   private void setUserAgent(HttpRequest request) {
     request.addRequestHeader("User-Agent", JSF_USER_AGENT);
   }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+package com.sun.ts.tests.jsf.common.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpException;
+
+import com.sun.ts.lib.util.TestUtil;
+import com.sun.ts.tests.common.webclient.http.HttpRequest;
+import com.sun.ts.tests.common.webclient.http.HttpResponse;
+
+/**
+ * Runs the API tests of a client in batches, see the <code>testnames</code>
+ * request parameter of <code>HttpTCKServlet</code>.
+ *
+ * When an API test is run, the servlet is sent the names of the API tests
+ * that follow it in the client too, and the parts of the response for those
+ * tests are kept until the tests are run. Only the tests the client declares
+ * with <code>AbstractUrlClient.setBatchedTests</code> are requested ahead of
+ * their turn. A test only uses the part received for it if the servlet
+ * reports that the test passed; a test that failed, possibly only because it
+ * ran out of turn, sends a request of its own, so the assertions of a test are
+ * made against the same response as before.
+ *
+ * A servlet that answers a batch with the response of a single test, or in a
+ * format of another version, is not sent batches any more.
+ */
+final class ApiTestBatch {
+
+  /**
+   * Property holding the number of tests requested at once, batches are not
+   * used unless it is greater than one.
+   */
+  static final String BATCH_SIZE = "jsf.api.batch.size";
+
+  private static final String BATCH_HEADER = "testnames";
+
+  private static final String BATCH_RESPONSE_HEADER = "X-TCK-Batch";
+
+  private static final String BATCH_VERSION = "2";
+
+  private static final String PART = "#part ";
+
+  private static final String END = "#end";
+
+  private static final String ENCODING = "ISO-8859-1";
+
+  private static final String PASSED = "passed";
+
+  // parts received ahead of their test, by servlet and test name
+  private static final Map<String, HttpResponse> PARTS = new HashMap<String, HttpResponse>();
+
+  // tests that were part of a batch already, by servlet and test name
+  private static final Set<String> REQUESTED = new HashSet<String>();
+
+  // servlets that answered a batch with the response of a single test
+  private static final Set<String> UNSUPPORTED = new HashSet<String>();
+
+  private final String host;
+
+  private final int port;
+
+  private final String servletPath;
+
+  private final String userAgent;
+
+  private final String[] testNames;
+
+  private final int size;
+
+  /**
+   * @param servletPath
+   *          the context root and name of the servlet running the tests
+   * @param testNames
+   *          the API tests of the client that can be batched, in the order
+   *          they are run
+   * @param size
+   *          the number of tests requested at once
+   */
+  ApiTestBatch(String host, int port, String servletPath, String userAgent,
+      String[] testNames, int size) {
+    this.host = host;
+    this.port = port;
+    this.servletPath = servletPath;
+    this.userAgent = userAgent;
+    this.testNames = testNames;
+    this.size = size;
+  }
+
+  /**
+   * Returns the request for a single API test, which is answered from a batch.
+   */
+  HttpRequest newRequest(String requestLine, String testName) {
+    return new Request(requestLine, testName);
+  }
+
+  private HttpResponse execute(Request single)
+      throws IOException, HttpException {
+    HttpResponse part = takePart(single.testName);
+    if (part != null) {
+      TestUtil.logMsg("[ApiTestBatch] Using the response received in a batch"
+          + " for test '" + single.testName + "'");
+      return part;
+    }
+
+    List<String> names = select(single.testName);
+    if (names.size() < 2) {
+      return single.executeSingle();
+    }
+
+    StringBuffer sb = new StringBuffer(256);
+    sb.append("GET ").append(servletPath).append("?testname=")
+        .append(single.testName).append('&').append(BATCH_HEADER).append('=');
+    for (int ii = 0; ii < names.size(); ii++) {
+      sb.append(ii == 0 ? "" : ",").append(names.get(ii));
+    }
+    sb.append(" HTTP/1.1");
+    TestUtil.logMsg("[ApiTestBatch] Requesting " + names.size()
+        + " tests at once: " + names);
+    HttpRequest batch = new HttpRequest(sb.toString(), host, port);
+    batch.addRequestHeader("User-Agent", userAgent);
+    HttpResponse response = batch.execute();
+
+    Header version = response.getResponseHeader(BATCH_RESPONSE_HEADER);
+    if (version == null) {
+      // the servlet ignored the batch and ran the test named by testname
+      synchronized (ApiTestBatch.class) {
+        UNSUPPORTED.add(servletPath);
+      }
+      return response;
+    }
+    if (!BATCH_VERSION.equals(version.getValue())) {
+      TestUtil.logMsg("[ApiTestBatch] Batch format " + version.getValue()
+          + " of " + servletPath + " is not supported");
+      synchronized (ApiTestBatch.class) {
+        UNSUPPORTED.add(servletPath);
+      }
+      return single.executeSingle();
+    }
+
+    part = null;
+    byte[] body = response.getResponseBodyAsRawBytes();
+    for (int pos = 0; pos < body.length;) {
+      int eol = indexOf(body, '\n', pos);
+      String header = new String(body, pos, eol - pos, ENCODING);
+      if (header.startsWith(END) || !header.startsWith(PART)) {
+        break;
+      }
+      // #part <test name> <status> <outcome> <length> <content type>
+      String[] fields = header.substring(PART.length()).split(" ", 5);
+      int status = Integer.parseInt(fields[1]);
+      int length = Integer.parseInt(fields[3]);
+      if (eol + 1 + length > body.length) {
+        break;
+      }
+      byte[] partBody = new byte[length];
+      System.arraycopy(body, eol + 1, partBody, 0, length);
+      pos = eol + 1 + length + 1;
+
+      if (status != 200 || !PASSED.equals(fields[2])) {
+        TestUtil.logTrace("[ApiTestBatch] Test '" + fields[0] + "' "
+            + fields[2] + " with status " + status + " in the batch");
+        continue;
+      }
+      HttpResponse received = new HttpResponse(response, status, "OK",
+          fields.length > 4 ? fields[4] : "text/plain", partBody);
+      if (fields[0].equals(single.testName)) {
+        part = received;
+      } else {
+        putPart(fields[0], received);
+      }
+    }
+
+    // run again on its own unless it passed, to get the same response as ever
+    return part != null ? part : single.executeSingle();
+  }
+
+  /**
+   * Returns the test and the tests following it that were not requested yet,
+   * up to the size of the batch.
+   */
+  private List<String> select(String testName) {
+    List<String> names = new ArrayList<String>();
+    names.add(testName);
+    synchronized (ApiTestBatch.class) {
+      REQUESTED.add(key(testName));
+      if (UNSUPPORTED.contains(servletPath)) {
+        return names;
+      }
+      int start = testNames.length;
+      for (int ii = 0; ii < testNames.length; ii++) {
+        if (testNames[ii].equals(testName)) {
+          start = ii + 1;
+          break;
+        }
+      }
+      for (int ii = start; ii < testNames.length && names.size() < size; ii++) {
+        if (REQUESTED.add(key(testNames[ii]))) {
+          names.add(testNames[ii]);
+        }
+      }
+    }
+    return names;
+  }
+
+  private HttpResponse takePart(String testName) {
+    synchronized (ApiTestBatch.class) {
+      return PARTS.remove(key(testName));
+    }
+  }
+
+  private void putPart(String testName, HttpResponse part) {
+    synchronized (ApiTestBatch.class) {
+      PARTS.put(key(testName), part);
+    }
+  }
+
+  private String key(String testName) {
+    return host + ':' + port + servletPath + '#' + testName;
+  }
+
+  private static int indexOf(byte[] bytes, char c, int from) {
+    for (int ii = from; ii < bytes.length; ii++) {
+      if (bytes[ii] == c) {
+        return ii;
+      }
+    }
+    return bytes.length;
+  }
+
+  /**
+   * The request of a single API test.
+   */
+  private final class Request extends HttpRequest {
+
+    private final String testName;
+
+    Request(String requestLine, String testName) {
+      super(requestLine, host, port);
+      this.testName = testName;
+    }
+
+    @Override
+    public HttpResponse execute() throws IOException, HttpException {
+      return ApiTestBatch.this.execute(this);
+    }
+
+    HttpResponse executeSingle() throws IOException, HttpException {
+      return super.execute();
+    }
+  }
+}
@@ -23,12 +23,16 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
 
+import com.gargoylesoftware.htmlunit.ElementNotFoundException;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.DomAttr;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
@@ -65,6 +69,8 @@ public class BaseHtmlUnitClient extends EETest {
 
   private WebClient webClient;
 
+  private HtmlPageIndex pageIndex;
+
   protected String hostName;
 
   protected int port;
@@ -160,14 +166,25 @@ public class BaseHtmlUnitClient extends EETest {
 
     allElements = (null == list) ? new ArrayList<HtmlElement>() : list;
 
-    for (Iterator<HtmlElement> i = root.getHtmlElementDescendants()
-        .iterator(); i.hasNext();) {
-      getAllElementsOfGivenClass(i.next(), allElements, matchClass);
+    List<HtmlElement> matches;
+    if (root.getPage() instanceof HtmlPage
+        && root == ((HtmlPage) root.getPage()).getDocumentElement()) {
+      matches = getPageIndex((HtmlPage) root.getPage())
+          .getElementsOfClass(matchClass);
+    } else {
+      matches = HtmlPageIndex.collect(root, matchClass);
     }
 
-    if (matchClass.isInstance(root)) {
-      if (!allElements.contains(root)) {
-        allElements.add(root);
+    if (allElements.isEmpty()) {
+      allElements.addAll(matches);
+    } else {
+      Set<HtmlElement> seen = Collections
+          .newSetFromMap(new IdentityHashMap<HtmlElement, Boolean>());
+      seen.addAll(allElements);
+      for (HtmlElement element : matches) {
+        if (seen.add(element)) {
+          allElements.add(element);
+        }
       }
     }
     return allElements;
@@ -204,19 +221,18 @@ public class BaseHtmlUnitClient extends EETest {
   protected HtmlElement getElementOfTypeIncludingId(HtmlPage root,
       String tagName, String id) {
 
-    HtmlElement result = null;
+    List<HtmlElement> list = getPageIndex(root)
+        .getElementsByTagName(tagName);
 
-    List list = root.getDocumentElement().getHtmlElementsByTagName(tagName);
-
-    for (Iterator i = list.iterator(); i.hasNext();) {
-      HtmlElement element = (HtmlElement) i.next();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      HtmlElement element = list.get(i);
 
       if (element.getId().indexOf(id) > -1) {
-        result = element;
+        return element;
       }
     }
 
-    return result;
+    return null;
   }
 
   /**
@@ -234,20 +250,18 @@ public class BaseHtmlUnitClient extends EETest {
   protected HtmlElement getElementOfTypeWithValue(HtmlPage root, String tagName,
       String value) {
 
-    HtmlElement result = null;
+    List<HtmlElement> list = getPageIndex(root)
+        .getElementsByTagName(tagName);
 
-    List<? extends HtmlElement> list = root.getDocumentElement()
-        .getHtmlElementsByTagName(tagName);
-
-    for (Object element : list) {
-      HtmlElement myElement = (HtmlElement) element;
+    for (int i = list.size() - 1; i >= 0; i--) {
+      HtmlElement myElement = list.get(i);
 
       if (myElement.getTextContent().equals(value)) {
-        result = myElement;
+        return myElement;
       }
     }
 
-    return result;
+    return null;
   }
 
   /**
@@ -265,18 +279,7 @@ public class BaseHtmlUnitClient extends EETest {
   protected HtmlElement getElementOfTypeIdStartsWith(HtmlPage root,
       String tagName, String id) {
 
-    HtmlElement result = null;
-
-    List list = root.getDocumentElement().getHtmlElementsByTagName(tagName);
-
-    for (Iterator i = list.iterator(); i.hasNext();) {
-      HtmlElement element = (HtmlElement) i.next();
-      if (element.getId().startsWith(id)) {
-        result = element;
-      }
-    }
-
-    return result;
+    return getPageIndex(root).getLastElementWithIdPrefix(tagName, id);
   }
 
   /**
@@ -294,8 +297,12 @@ public class BaseHtmlUnitClient extends EETest {
   protected HtmlElement getElementOfTypeIncludingTitle(HtmlPage root,
       String tagName, String title) {
 
-    HtmlElement result = root.getDocumentElement()
-        .getOneHtmlElementByAttribute(tagName, "title", title);
+    HtmlElement result = getPageIndex(root).getFirstElementWithTitle(tagName,
+        title);
+
+    if (result == null) {
+      throw new ElementNotFoundException(tagName, "title", title);
+    }
 
     return result;
   }
@@ -315,21 +322,7 @@ public class BaseHtmlUnitClient extends EETest {
   protected HtmlElement getElementOfTypeIncludingSrc(HtmlPage root,
       String tagName, String src) {
 
-    String test;
-    HtmlElement result = null;
-
-    ArrayList<HtmlElement> scripts = (ArrayList<HtmlElement>) root
-        .getDocumentElement().getHtmlElementsByTagName(tagName);
-
-    for (HtmlElement e : scripts) {
-      test = e.getAttribute("src");
-      if (test.contains(src)) {
-        result = e;
-        break;
-      }
-    }
-
-    return result;
+    return getPageIndex(root).getFirstElementWithSrc(tagName, src);
   }
 
   protected void handleTestStatus(StringBuilder messages) throws Fault {
@@ -460,12 +453,12 @@ public class BaseHtmlUnitClient extends EETest {
   protected List<HtmlLabel> getLabelsContaining(HtmlPage root, String myLabel) {
     List<HtmlLabel> result = new ArrayList<HtmlLabel>();
 
-    List<HtmlLabel> labels = root.getDocumentElement()
-        .getHtmlElementsByTagName("label");
+    List<HtmlElement> labels = getPageIndex(root)
+        .getElementsByTagName("label");
 
-    for (HtmlLabel label : labels) {
+    for (HtmlElement label : labels) {
       if (label.asText().contains(myLabel)) {
-        result.add(label);
+        result.add((HtmlLabel) label);
       }
     }
 
@@ -753,6 +746,19 @@ public class BaseHtmlUnitClient extends EETest {
 
   // ------------------------ private methods
 
+  /*
+   * Returns the element index for the given page, building it with a single
+   * traversal of the document if the page changed or was modified since the
+   * last lookup.
+   */
+  private HtmlPageIndex getPageIndex(HtmlPage page) {
+    if (pageIndex == null || pageIndex.getPage() != page
+        || pageIndex.isStale()) {
+      pageIndex = new HtmlPageIndex(page);
+    }
+    return pageIndex;
+  }
+
   private void contains(HtmlPage pg, String str, StringBuilder sb,
       Boolean negTest) throws Fault {
 
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+/*
+ * $Id$
+ */
+package com.sun.ts.tests.jsf.common.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * <p>
+ * Index of the elements of an {@link HtmlPage} built with a single traversal
+ * of the document. Elements are indexed by tag name, id and title; lookups by
+ * element class are computed once per class from the same traversal.
+ * </p>
+ *
+ * <p>
+ * The index listens for DOM and attribute changes on the page and reports
+ * itself as stale once the page has been modified, so callers can rebuild it.
+ * </p>
+ */
+final class HtmlPageIndex
+    implements DomChangeListener, HtmlAttributeChangeListener {
+
+  private static final long serialVersionUID = 1L;
+
+  private final HtmlPage page;
+
+  // all elements with children before their parent, as historically returned
+  // by BaseHtmlUnitClient.getAllElementsOfGivenClass
+  private final List<HtmlElement> childrenFirstOrder = new ArrayList<HtmlElement>();
+
+  private final Map<String, List<HtmlElement>> byTagName = new HashMap<String, List<HtmlElement>>();
+
+  private final NavigableMap<String, List<HtmlElement>> byId = new TreeMap<String, List<HtmlElement>>();
+
+  private final Map<String, List<HtmlElement>> byTitle = new HashMap<String, List<HtmlElement>>();
+
+  private final Map<Class<?>, List<HtmlElement>> byClass = new HashMap<Class<?>, List<HtmlElement>>();
+
+  // document order position of each element
+  private final Map<HtmlElement, Integer> position = new IdentityHashMap<HtmlElement, Integer>();
+
+  private volatile boolean stale = false;
+
+  HtmlPageIndex(HtmlPage page) {
+    this.page = page;
+    DomElement root = page.getDocumentElement();
+    if (root != null) {
+      index(root);
+    }
+    page.addDomChangeListener(this);
+    page.addHtmlAttributeChangeListener(this);
+  }
+
+  /*
+   * package-private methods
+   * ========================================================================
+   */
+
+  /**
+   * @return the page this index was built for
+   */
+  HtmlPage getPage() {
+    return page;
+  }
+
+  /**
+   * @return true if the page has been modified since the index was built
+   */
+  boolean isStale() {
+    return stale;
+  }
+
+  /**
+   * Returns the elements that are instances of the given class, children
+   * before their parents.
+   */
+  List<HtmlElement> getElementsOfClass(Class<?> matchClass) {
+    List<HtmlElement> result = byClass.get(matchClass);
+    if (result == null) {
+      result = new ArrayList<HtmlElement>();
+      for (HtmlElement element : childrenFirstOrder) {
+        if (matchClass.isInstance(element)) {
+          result.add(element);
+        }
+      }
+      result = Collections.unmodifiableList(result);
+      byClass.put(matchClass, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the elements with the given tag name in document order.
+   */
+  List<HtmlElement> getElementsByTagName(String tagName) {
+    List<HtmlElement> result = byTagName
+        .get(tagName.toLowerCase(Locale.ROOT));
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Returns the last element, in document order, with the given tag name and
+   * an id starting with the given prefix, or null if there is none.
+   */
+  HtmlElement getLastElementWithIdPrefix(String tagName, String prefix) {
+    String tag = tagName.toLowerCase(Locale.ROOT);
+    HtmlElement result = null;
+    int last = -1;
+    for (List<HtmlElement> elements : idsStartingWith(prefix).values()) {
+      for (HtmlElement element : elements) {
+        int pos = position.get(element).intValue();
+        if (pos > last && tag.equals(element.getTagName())) {
+          result = element;
+          last = pos;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the first element, in document order, with the given tag name and
+   * title, or null if there is none.
+   */
+  HtmlElement getFirstElementWithTitle(String tagName, String title) {
+    List<HtmlElement> elements = byTitle.get(title);
+    if (elements != null) {
+      String tag = tagName.toLowerCase(Locale.ROOT);
+      for (HtmlElement element : elements) {
+        if (tag.equals(element.getTagName())) {
+          return element;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the first element, in document order, with the given tag name and
+   * a src attribute containing the given string, or null if there is none.
+   */
+  HtmlElement getFirstElementWithSrc(String tagName, String src) {
+    for (HtmlElement element : getElementsByTagName(tagName)) {
+      if (element.getAttribute("src").contains(src)) {
+        return element;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Collects the elements below and including root that are instances of the
+   * given class, children before their parents, in a single traversal.
+   */
+  static List<HtmlElement> collect(DomNode root, Class<?> matchClass) {
+    List<HtmlElement> result = new ArrayList<HtmlElement>();
+    collect(root, matchClass, result);
+    return result;
+  }
+
+  /*
+   * DomChangeListener and HtmlAttributeChangeListener methods
+   * ========================================================================
+   */
+
+  public void nodeAdded(DomChangeEvent event) {
+    invalidate();
+  }
+
+  public void nodeDeleted(DomChangeEvent event) {
+    invalidate();
+  }
+
+  public void attributeAdded(HtmlAttributeChangeEvent event) {
+    invalidate();
+  }
+
+  public void attributeRemoved(HtmlAttributeChangeEvent event) {
+    invalidate();
+  }
+
+  public void attributeReplaced(HtmlAttributeChangeEvent event) {
+    invalidate();
+  }
+
+  /*
+   * private methods
+   * ========================================================================
+   */
+
+  private void invalidate() {
+    if (!stale) {
+      stale = true;
+      page.removeDomChangeListener(this);
+      page.removeHtmlAttributeChangeListener(this);
+    }
+  }
+
+  private NavigableMap<String, List<HtmlElement>> idsStartingWith(
+      String prefix) {
+    if (prefix.length() == 0) {
+      return byId;
+    }
+    return byId.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+
+  private void index(DomNode node) {
+    HtmlElement element = null;
+    if (node instanceof HtmlElement) {
+      element = (HtmlElement) node;
+      position.put(element, Integer.valueOf(position.size()));
+      add(byTagName, element.getTagName(), element);
+      add(byId, element.getId(), element);
+      String title = element.getAttribute("title");
+      if (title != DomElement.ATTRIBUTE_NOT_DEFINED) {
+        add(byTitle, title, element);
+      }
+    }
+    for (DomNode child = node.getFirstChild(); child != null; child = child
+        .getNextSibling()) {
+      index(child);
+    }
+    if (element != null) {
+      childrenFirstOrder.add(element);
+    }
+  }
+
+  private static void collect(DomNode node, Class<?> matchClass,
+      List<HtmlElement> result) {
+    for (DomNode child = node.getFirstChild(); child != null; child = child
+        .getNextSibling()) {
+      collect(child, matchClass, result);
+    }
+    if (node instanceof HtmlElement && matchClass.isInstance(node)) {
+      result.add((HtmlElement) node);
+    }
+  }
+
+  private static void add(Map<String, List<HtmlElement>> map, String key,
+      HtmlElement element) {
+    List<HtmlElement> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<HtmlElement>(1);
+      map.put(key, list);
+    }
+    list.add(element);
+  }
+}
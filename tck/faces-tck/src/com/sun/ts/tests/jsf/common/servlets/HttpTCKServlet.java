@@ -20,9 +20,21 @@
 
 package com.sun.ts.tests.jsf.common.servlets;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import jakarta.faces.FactoryFinder;
 import jakarta.faces.application.Application;
@@ -33,17 +45,41 @@ import jakarta.faces.lifecycle.LifecycleFactory;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import jakarta.servlet.http.HttpSession;
 
 /**
  * Any test that would normally extend GenericServlet will instead extend this
  * class. This will provide a simple framework from invoking various tests
  * defined as methods within the servlet that extends this class.
  *
+ * <p>
+ * A request with a comma separated <code>testnames</code> parameter runs
+ * several tests in one round-trip. The tests are run one after another, each
+ * with a FacesContext of its own, and the output of each is written as one
+ * part of a text/plain response marked with the <code>X-TCK-Batch</code>
+ * header:
+ * </p>
+ *
+ * <pre>
+ * #part &lt;test name&gt; &lt;status&gt; &lt;outcome&gt; &lt;length&gt; &lt;content type&gt;
+ * &lt;length bytes of output&gt;
+ * #part ...
+ * #end
+ * </pre>
+ *
+ * The outcome is <code>passed</code> if the test returned the status 200 and
+ * its output reports that it passed without reporting a failure, and
+ * <code>failed</code> otherwise. A test that does not exist gets the status
+ * 404, and a test that throws gets the status 500 with the stack trace as its
+ * output.
  */
 
 public abstract class HttpTCKServlet extends HttpServlet {
@@ -56,6 +92,27 @@ public abstract class HttpTCKServlet extends HttpServlet {
    */
   private static final String TEST_HEADER = "testname";
 
+  /**
+   * <code>BATCH_HEADER</code> is the constant for the <code>testnames</code>
+   * header of a batched request.
+   */
+  private static final String BATCH_HEADER = "testnames";
+
+  /**
+   * Response header marking a batched response, holding the version of the
+   * format.
+   */
+  private static final String BATCH_RESPONSE_HEADER = "X-TCK-Batch";
+
+  private static final String BATCH_VERSION = "2";
+
+  /**
+   * What the tests write when they pass or fail, see <code>JSFTestUtil</code>.
+   */
+  private static final String PASSED = "Test PASSED";
+
+  private static final String FAILED = "Test FAILED";
+
   /**
    * The {@link Application} object for this context.
    */
@@ -71,6 +128,11 @@ public abstract class HttpTCKServlet extends HttpServlet {
    */
   private ServletContext context;
 
+  /**
+   * The test methods of this servlet, keyed by name, bound to this instance.
+   */
+  private Map<String, MethodHandle> tests;
+
   // ---------------------------------------------------------- Public Methods
 
   /**
@@ -83,6 +145,7 @@ public abstract class HttpTCKServlet extends HttpServlet {
   public void init(ServletConfig config) throws ServletException {
     super.init(config);
     context = config.getServletContext();
+    tests = findTests();
   }
 
   /**
@@ -141,30 +204,30 @@ public abstract class HttpTCKServlet extends HttpServlet {
   @SuppressWarnings("static-access")
   protected void invokeTest(HttpServletRequest req, HttpServletResponse res)
       throws ServletException {
-    initFaces(context, req, res);
-    res.setContentType(TEXT_PLAIN);
-    char[] temp = req.getParameter(TEST_HEADER).toCharArray();
-    temp[0] = Character.toLowerCase(temp[0]);
-    String test = new String(temp);
-
-    Method[] methods = this.getClass().getMethods();
-    // (test, TEST_ARGS);
-    Method method = null;
-    for (int i = 0; i < methods.length; i++) {
-      method = methods[i];
-      if (method.getName().equals(test)) {
-        break;
-      }
+    String testNames = req.getParameter(BATCH_HEADER);
+    if (testNames != null && testNames.length() != 0) {
+      invokeTests(req, res, testNames);
+      return;
+    }
+
+    String testName = req.getParameter(TEST_HEADER);
+    if (testName == null || testName.length() == 0) {
+      throw new ServletException(
+          "Request parameter '" + TEST_HEADER + "' not specified.");
     }
+    String test = toMethodName(testName);
+
+    MethodHandle method = tests.get(test);
     if (method == null) {
       throw new ServletException("Test: " + test + " does not exist.");
     }
+
+    initFaces(context, req, res);
+    res.setContentType(TEXT_PLAIN);
     try {
-      method.invoke(this, new Object[] { req, res });
-    } catch (InvocationTargetException ite) {
-      throw new ServletException(ite.getTargetException());
-    } catch (Exception e) {
-      throw new ServletException("Error executing test: " + test, e);
+      method.invoke(req, res);
+    } catch (Throwable t) {
+      throw new ServletException(t);
     } finally {
       if (facesContext.getCurrentInstance() != null) {
         facesContext.release();
@@ -198,6 +261,120 @@ public abstract class HttpTCKServlet extends HttpServlet {
 
   // --------------------------------------------------------- Private Methods
 
+  /**
+   * Runs the tests named in the comma separated list one after another and
+   * writes the output of each as one part of the response.
+   */
+  private void invokeTests(HttpServletRequest req, HttpServletResponse res,
+      String testNames) throws ServletException {
+    res.setContentType(TEXT_PLAIN);
+    res.setCharacterEncoding(BatchPart.DEFAULT_ENCODING);
+    res.setHeader(BATCH_RESPONSE_HEADER, BATCH_VERSION);
+    try {
+      OutputStream out = res.getOutputStream();
+      for (String testName : testNames.split(",")) {
+        testName = testName.trim();
+        if (testName.length() == 0) {
+          continue;
+        }
+        String test = toMethodName(testName);
+        BatchPart part = new BatchPart(res);
+        MethodHandle method = tests.get(test);
+        if (method == null) {
+          part.sendError(HttpServletResponse.SC_NOT_FOUND,
+              "Test: " + test + " does not exist.");
+        } else {
+          Set<String> attributes = getAttributeNames(req);
+          HttpSession session = req.getSession(false);
+          initFaces(context, req, part);
+          part.setContentType(TEXT_PLAIN);
+          try {
+            method.invoke(req, part);
+          } catch (Throwable t) {
+            part.fail(t);
+          } finally {
+            if (FacesContext.getCurrentInstance() != null) {
+              facesContext.release();
+            }
+            isolate(req, attributes, session);
+          }
+        }
+        part.writeTo(testName, out);
+        // let the client see the progress of a long batch
+        out.flush();
+      }
+      out.write("#end\n".getBytes(BatchPart.DEFAULT_ENCODING));
+    } catch (IOException ioe) {
+      throw new ServletException(ioe);
+    }
+  }
+
+  /**
+   * Undoes what a test of a batch left in the request and session, so that the
+   * next test starts out the way it would in a request of its own: the request
+   * attributes the test added are removed, and a session it created is
+   * invalidated.
+   */
+  private static void isolate(HttpServletRequest req, Set<String> attributes,
+      HttpSession session) {
+    for (String name : getAttributeNames(req)) {
+      if (!attributes.contains(name)) {
+        req.removeAttribute(name);
+      }
+    }
+    HttpSession current = req.getSession(false);
+    if (current != null && current != session) {
+      try {
+        current.invalidate();
+      } catch (IllegalStateException ise) {
+        // already invalidated by the test
+      }
+    }
+  }
+
+  private static Set<String> getAttributeNames(HttpServletRequest req) {
+    Set<String> names = new HashSet<String>();
+    for (Enumeration<String> e = req.getAttributeNames(); e
+        .hasMoreElements();) {
+      names.add(e.nextElement());
+    }
+    return names;
+  }
+
+  private static String toMethodName(String testName) {
+    char[] temp = testName.toCharArray();
+    temp[0] = Character.toLowerCase(temp[0]);
+    return new String(temp);
+  }
+
+  /**
+   * Collects the public methods declared by subclasses of this servlet that
+   * accept the request and response, bound to this instance. If a name is
+   * overloaded, the first method returned by {@link Class#getMethods()} is
+   * used.
+   */
+  private Map<String, MethodHandle> findTests() throws ServletException {
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    Map<String, MethodHandle> result = new HashMap<String, MethodHandle>();
+    for (Method method : this.getClass().getMethods()) {
+      Class<?>[] params = method.getParameterTypes();
+      if (method.getDeclaringClass().isAssignableFrom(HttpTCKServlet.class)
+          || Modifier.isStatic(method.getModifiers()) || params.length != 2
+          || !params[0].isAssignableFrom(HttpServletRequest.class)
+          || !params[1].isAssignableFrom(HttpServletResponse.class)
+          || result.containsKey(method.getName())) {
+        continue;
+      }
+      try {
+        result.put(method.getName(), lookup.unreflect(method).bindTo(this));
+      } catch (IllegalAccessException iae) {
+        throw new ServletException(
+            "Unable to access test: " + method.getName(), iae);
+      }
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
   private void initFaces(ServletContext context, ServletRequest request,
       ServletResponse response) {
 
@@ -225,4 +402,195 @@ public abstract class HttpTCKServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Buffers the status, content type and output of one test of a batch, so
+   * that they do not reach the response to the batched request.
+   */
+  private static final class BatchPart extends HttpServletResponseWrapper {
+
+    static final String DEFAULT_ENCODING = "ISO-8859-1";
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private int status = SC_OK;
+
+    private String contentType;
+
+    private String characterEncoding = DEFAULT_ENCODING;
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    BatchPart(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public void setStatus(int sc) {
+      status = sc;
+    }
+
+    @Override
+    public int getStatus() {
+      return status;
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      sendError(sc, null);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      resetBuffer();
+      status = sc;
+      if (msg != null) {
+        getWriter().print(msg);
+      }
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      resetBuffer();
+      status = SC_FOUND;
+    }
+
+    @Override
+    public void setContentType(String type) {
+      if (type == null) {
+        contentType = null;
+        return;
+      }
+      int idx = type.indexOf(";charset=");
+      if (idx > -1) {
+        setCharacterEncoding(type.substring(idx + 9).trim());
+        type = type.substring(0, idx);
+      }
+      contentType = type.trim();
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType == null ? null
+          : contentType + ";charset=" + characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+      if (writer == null && charset != null) {
+        characterEncoding = charset;
+      }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+      return characterEncoding;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (outputStream == null) {
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            buffer.write(b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            buffer.write(b, off, len);
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("Not an asynchronous request");
+          }
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        writer = new PrintWriter(
+            new OutputStreamWriter(buffer, characterEncoding));
+      }
+      return writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+      if (writer != null) {
+        writer.flush();
+      }
+    }
+
+    @Override
+    public boolean isCommitted() {
+      return false;
+    }
+
+    @Override
+    public void resetBuffer() {
+      flushBuffer();
+      buffer.reset();
+    }
+
+    @Override
+    public void reset() {
+      resetBuffer();
+      status = SC_OK;
+    }
+
+    void fail(Throwable t) throws IOException {
+      reset();
+      status = SC_INTERNAL_SERVER_ERROR;
+      contentType = TEXT_PLAIN;
+      PrintWriter out = new PrintWriter(
+          new OutputStreamWriter(buffer, characterEncoding));
+      t.printStackTrace(out);
+      out.flush();
+    }
+
+    /**
+     * Returns whether the test passed, the way the client checks the response
+     * of a test run on its own.
+     */
+    boolean isPassed() throws IOException {
+      if (status != SC_OK) {
+        return false;
+      }
+      String output = buffer.toString(characterEncoding);
+      return output.indexOf(PASSED) > -1 && output.indexOf(FAILED) == -1;
+    }
+
+    void writeTo(String testName, OutputStream out) throws IOException {
+      flushBuffer();
+      String type = getContentType();
+      StringBuilder header = new StringBuilder(64);
+      header.append("#part ").append(testName).append(' ').append(status)
+          .append(' ').append(isPassed() ? "passed" : "failed").append(' ')
+          .append(buffer.size()).append(' ')
+          .append(type == null ? TEXT_PLAIN : type).append('\n');
+      out.write(header.toString().getBytes(DEFAULT_ENCODING));
+      buffer.writeTo(out);
+      out.write('\n');
+    }
+  }
+
 }// HttpTCKServlet
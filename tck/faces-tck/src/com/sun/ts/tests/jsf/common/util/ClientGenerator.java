@@ -60,7 +60,7 @@ public class ClientGenerator {
     String packageName = testClass.getPackage().getName();
     String[] testMethods = getTestEntries();
     StringBuffer sb = new StringBuffer(2048);
-    writeClassHeader(sb, packageName, contextRoot);
+    writeClassHeader(sb, packageName, contextRoot, testMethods);
     for (String testMethod : testMethods) {
       writeTestEntry(sb, testMethod);
     }
@@ -122,7 +122,7 @@ public class ClientGenerator {
   }
 
   private void writeClassHeader(StringBuffer buffer, String packageName,
-      String contextRoot) {
+      String contextRoot, String[] testMethods) {
     buffer.append("/*" + NL);
     buffer.append(
         " * Copyright (c) 2005, 2018 Oracle and/or its affiliates. All rights reserved."
@@ -173,6 +173,13 @@ public class ClientGenerator {
     buffer.append(NL);
     buffer.append("    private static final String CONTEXT_ROOT = \"");
     buffer.append(contextRoot).append("\";" + NL);
+    // every generated test runs the API test of its name and nothing else
+    buffer.append("    private static final String[] BATCHED_TESTS = {");
+    for (int i = 0; i < testMethods.length; i++) {
+      buffer.append(i == 0 ? "" : ",").append(NL);
+      buffer.append("        \"").append(testMethods[i]).append('"');
+    }
+    buffer.append(" };" + NL);
     buffer.append("    public static void main(String[] args) {" + NL);
     buffer.append("        URLClient theTests = new URLClient();" + NL);
     buffer.append("        Status s = theTests.run(args," + NL);
@@ -189,6 +196,7 @@ public class ClientGenerator {
             + NL);
     buffer.append("        setContextRoot(CONTEXT_ROOT);" + NL);
     buffer.append("        setServletName(DEFAULT_SERVLET_NAME);" + NL);
+    buffer.append("        setBatchedTests(BATCHED_TESTS);" + NL);
     buffer.append("         return super.run(args, out, err);" + NL);
     buffer.append("    }" + NL);
     buffer.append("    /*" + NL);
@@ -30,10 +30,6 @@ public class ViewExpired1Bean {
                 getStateManager().isSavingStateInClient(FacesContext.getCurrentInstance()) ? "client" : "server";
     }
     
-    public void expireSessionSoon() {
-        FacesContext.getCurrentInstance().getExternalContext().setSessionMaxInactiveInterval(1);
-    }
-    
     public void verifySession() {
         FacesContext.getCurrentInstance().addMessage(null, 
                 new FacesMessage(FacesMessage.SEVERITY_FATAL, "Should not see this!", "Should not see this!"));
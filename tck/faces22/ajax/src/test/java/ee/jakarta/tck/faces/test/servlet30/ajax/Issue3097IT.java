@@ -23,9 +23,11 @@ import org.junit.Test;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
+import ee.jakarta.tck.faces.test.util.arquillian.ExpiryTrigger;
 import ee.jakarta.tck.faces.test.util.arquillian.ITBase;
 import jakarta.faces.component.behavior.AjaxBehavior;
 
+@ExpiryTrigger
 public class Issue3097IT extends ITBase {
 
     /**
@@ -37,10 +39,7 @@ public class Issue3097IT extends ITBase {
         HtmlPage page = getPage("viewExpired1.xhtml");
 
         if (page.asXml().indexOf("State Saving Method: server") != -1) {
-            HtmlElement expireButton = page.getHtmlElementById("form:expireSessionSoon");
-            expireButton.click();
-            webClient.waitForBackgroundJavaScript(3000);
-            Thread.sleep(25000);
+            assertTrue(expireSession());
             HtmlElement submitButton = page.getHtmlElementById("form:submit");
             page = submitButton.click();
             webClient.waitForBackgroundJavaScript(3000);
@@ -39,6 +39,7 @@ import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.html.HtmlSubmitInput;
 
+import ee.jakarta.tck.faces.test.util.htmlunit.AjaxWaiter;
 import jakarta.faces.component.UIWebsocket;
 
 @RunWith(Arquillian.class)
@@ -137,33 +138,25 @@ public class Spec1396IT {
     }
 
     /**
-     * HtmlUnit is not capable of waiting until WS is opened. Hence this work around.
+     * HtmlUnit is not capable of waiting until WS is opened. Hence this work around, which
+     * checks the page again each time it changes.
      */
     static void waitUntilWebsocketIsOpened(HtmlPage page) throws Exception {
         Predicate<HtmlPage> isWebsocketOpened = p -> "yes".equals(page.getElementById("opened").asNormalizedText());
-        int retries = 10;
 
-        while (!isWebsocketOpened.test(page) && retries --> 0) {
-            Thread.sleep(300);
-        }
-
-        if (!isWebsocketOpened.test(page)) {
+        if (!AjaxWaiter.waitUntil(page, isWebsocketOpened, 3000)) {
             fail("Failed to establish connection with websocket within 3 seconds.");
         }
     }
 
     /**
-     * HtmlUnit is not capable of waiting until WS is pushed. Hence this work around.
+     * HtmlUnit is not capable of waiting until WS is pushed. Hence this work around, which
+     * checks the page again each time it changes.
      */
     static void waitUntilWebsocketIsPushed(HtmlPage page) throws Exception {
         Predicate<HtmlPage> isWebsocketPushed = p -> "yes".equals(page.getElementById("opened").asNormalizedText());
-        int retries = 10;
-
-        while (!isWebsocketPushed.test(page) && retries --> 0) {
-            Thread.sleep(300);
-        }
 
-        if (!isWebsocketPushed.test(page)) {
+        if (!AjaxWaiter.waitUntil(page, isWebsocketPushed, 3000)) {
             fail("Failed to retrieve push message from websocket within 3 seconds.");
         }
     }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.arquillian;
+
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.spi.client.deployment.Deployment;
+import org.jboss.arquillian.container.spi.client.deployment.DeploymentDescription;
+import org.jboss.arquillian.container.spi.client.deployment.DeploymentScenario;
+import org.jboss.arquillian.container.spi.event.ContainerMultiControlEvent;
+import org.jboss.arquillian.container.spi.event.DeployManagedDeployments;
+import org.jboss.arquillian.container.spi.event.UnDeployManagedDeployments;
+import org.jboss.arquillian.container.test.impl.client.deployment.event.GenerateDeployment;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.InstanceProducer;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.core.spi.EventContext;
+import org.jboss.arquillian.test.spi.annotation.ClassScoped;
+import org.jboss.arquillian.test.spi.context.ClassContext;
+import org.jboss.arquillian.test.spi.event.suite.AfterSuite;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ArchivePath;
+
+/**
+ * Deploys the application of a test module once per JVM instead of once per test class.
+ *
+ * <p>
+ * With <code>-Daggregated.deployment=true</code> (the <code>aggregated</code> Maven
+ * profile) the deployment generated for the first test class is deployed and kept. Each
+ * following class whose deployment contains the same archive, which is the case for all
+ * classes importing <code>target/&lt;finalName&gt;.war</code>, uses the deployment already
+ * in the container, so <code>@ArquillianResource</code> URLs point to it. The deployment
+ * is undeployed when the suite ends.
+ * </p>
+ *
+ * <p>
+ * A class annotated with {@link IsolatedDeployment}, or one whose archive differs, first
+ * undeploys the shared deployment, as both usually use the same context root. An isolated
+ * class is deployed and undeployed as usual; a class with a different archive becomes the
+ * owner of the next shared deployment.
+ * </p>
+ */
+public class AggregatedDeployer {
+
+    private static final Logger LOGGER = Logger.getLogger(AggregatedDeployer.class.getName());
+
+    private static final String ENABLED_PROP = "aggregated.deployment";
+
+    @Inject
+    @ClassScoped
+    private InstanceProducer<DeploymentScenario> deploymentScenario;
+
+    @Inject
+    private Instance<ClassContext> classContext;
+
+    @Inject
+    private Event<ContainerMultiControlEvent> container;
+
+    private DeploymentScenario shared;
+
+    private String sharedKey;
+
+    private boolean sharedDeployed;
+
+    // whether the current test class uses the shared deployment
+    private boolean sharing;
+
+    private boolean undeployingShared;
+
+    /**
+     * @return whether the aggregated deployment mode is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROP);
+    }
+
+    // outermost, so the shared deployment is compared with the archives as changed by the
+    // other deployers
+    public void generateDeployment(@Observes(precedence = 100) EventContext<GenerateDeployment> context) {
+        context.proceed();
+
+        DeploymentScenario scenario = deploymentScenario.get();
+        String key = context.getEvent().getTestClass().isAnnotationPresent(IsolatedDeployment.class) ? null : key(scenario);
+        sharing = key != null;
+
+        if (shared != null && !(sharing && key.equals(sharedKey))) {
+            undeployShared();
+            deploymentScenario.set(scenario);
+        }
+        if (sharing) {
+            if (shared == null) {
+                shared = scenario;
+                sharedKey = key;
+            } else {
+                deploymentScenario.set(shared);
+            }
+        }
+    }
+
+    public void deploy(@Observes EventContext<DeployManagedDeployments> context) {
+        if (!sharing) {
+            context.proceed();
+            return;
+        }
+        if (!sharedDeployed) {
+            context.proceed();
+            sharedDeployed = true;
+            LOGGER.info("Deployed " + sharedKey.substring(0, sharedKey.indexOf('|')) + " for all test classes");
+        }
+    }
+
+    public void undeploy(@Observes EventContext<UnDeployManagedDeployments> context) {
+        if (sharing && !undeployingShared) {
+            // kept for the next test class
+            return;
+        }
+        context.proceed();
+    }
+
+    public void afterSuite(@Observes(precedence = 100) AfterSuite event) {
+        if (shared == null) {
+            return;
+        }
+
+        // the deployment scenario only lives in a class context
+        ClassContext context = classContext.get();
+        context.activate(AggregatedDeployer.class);
+        try {
+            undeployShared();
+        } finally {
+            context.deactivate();
+            context.destroy(AggregatedDeployer.class);
+        }
+    }
+
+    private void undeployShared() {
+        deploymentScenario.set(shared);
+        undeployingShared = true;
+        try {
+            container.fire(new UnDeployManagedDeployments());
+        } finally {
+            undeployingShared = false;
+            shared = null;
+            sharedKey = null;
+            sharedDeployed = false;
+        }
+    }
+
+    /**
+     * @return a key identifying the archives of the scenario, or <code>null</code> if the
+     *         scenario cannot be shared
+     */
+    private static String key(DeploymentScenario scenario) {
+        if (scenario == null || scenario.deployments().isEmpty()) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (Deployment deployment : scenario.deployments()) {
+            DeploymentDescription description = deployment.getDescription();
+            if (!description.managed() || !description.isArchiveDeployment() || description.getExpectedException() != null) {
+                return null;
+            }
+            Archive<?> archive = description.getArchive();
+            key.append(archive.getName())
+               .append('|').append(description.getName())
+               .append('|').append(description.getTarget().getName())
+               .append('|').append(description.testable());
+            for (ArchivePath path : new TreeSet<>(archive.getContent().keySet())) {
+                key.append('|').append(path.get());
+            }
+            key.append('\n');
+        }
+        return key.toString();
+    }
+}
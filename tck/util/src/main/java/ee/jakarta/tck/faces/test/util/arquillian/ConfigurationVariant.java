@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.arquillian;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.arquillian.container.spi.client.deployment.Deployment;
+import org.jboss.arquillian.container.spi.client.deployment.DeploymentScenario;
+import org.jboss.arquillian.container.test.impl.client.deployment.event.GenerateDeployment;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.core.spi.EventContext;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+
+/**
+ * Deploys the applications with the state saving and project stage configuration of the
+ * variant being tested (the <code>matrix</code> Maven profile).
+ *
+ * <p>
+ * The system properties <code>webapp.projectStage</code>,
+ * <code>webapp.stateSavingMethod</code>, <code>webapp.partialStateSaving</code> and
+ * <code>webapp.serializeServerState</code> replace the placeholders of the same name in
+ * the <code>WEB-INF/web.xml</code> of every deployed web archive, and set the matching
+ * <code>jakarta.faces.*</code> context parameters of web.xml files that do not use the
+ * placeholders. An archive without a web.xml is given one holding just these parameters.
+ * Properties that are not set leave the web.xml alone.
+ * </p>
+ */
+public class ConfigurationVariant {
+
+    private static final String WEB_XML = "WEB-INF/web.xml";
+
+    private static final Map<String, String> PARAMETERS = new LinkedHashMap<>();
+
+    static {
+        PARAMETERS.put("webapp.projectStage", "jakarta.faces.PROJECT_STAGE");
+        PARAMETERS.put("webapp.stateSavingMethod", "jakarta.faces.STATE_SAVING_METHOD");
+        PARAMETERS.put("webapp.partialStateSaving", "jakarta.faces.PARTIAL_STATE_SAVING");
+        PARAMETERS.put("webapp.serializeServerState", "jakarta.faces.SERIALIZE_SERVER_STATE");
+    }
+
+    @Inject
+    private Instance<DeploymentScenario> deploymentScenario;
+
+    /**
+     * @return whether any configuration property is set
+     */
+    public static boolean isEnabled() {
+        return !getConfiguration().isEmpty();
+    }
+
+    public void generateDeployment(@Observes EventContext<GenerateDeployment> context) {
+        context.proceed();
+
+        DeploymentScenario scenario = deploymentScenario.get();
+        if (scenario == null) {
+            return;
+        }
+        Map<String, String> configuration = getConfiguration();
+        for (Deployment deployment : scenario.deployments()) {
+            if (deployment.getDescription().isArchiveDeployment() && deployment.getDescription().getArchive().getName().endsWith(".war")) {
+                configure(deployment.getDescription().getArchive(), configuration);
+            }
+        }
+    }
+
+    private static void configure(Archive<?> archive, Map<String, String> configuration) {
+        Node node = archive.get(WEB_XML);
+        String webXml;
+        if (node == null || node.getAsset() == null) {
+            webXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<web-app xmlns=\"https://jakarta.ee/xml/ns/jakartaee\" version=\"6.0\">\n"
+                    + "</web-app>\n";
+        } else {
+            webXml = read(node);
+            archive.delete(WEB_XML);
+        }
+        archive.add(new StringAsset(configure(webXml, configuration)), WEB_XML);
+    }
+
+    static String configure(String webXml, Map<String, String> configuration) {
+        String configured = webXml;
+        for (Map.Entry<String, String> property : configuration.entrySet()) {
+            String placeholder = "${" + property.getKey() + "}";
+            if (configured.contains(placeholder)) {
+                configured = configured.replace(placeholder, property.getValue());
+                continue;
+            }
+
+            String name = PARAMETERS.get(property.getKey());
+            Matcher parameter = Pattern.compile("(<param-name>\\s*" + Pattern.quote(name) + "\\s*</param-name>\\s*<param-value>)(.*?)(</param-value>)",
+                    Pattern.DOTALL).matcher(configured);
+            if (parameter.find()) {
+                configured = configured.substring(0, parameter.start(2)) + property.getValue() + configured.substring(parameter.end(2));
+            } else {
+                Matcher webApp = Pattern.compile("<web-app\\b[^>]*>").matcher(configured);
+                if (webApp.find()) {
+                    configured = configured.substring(0, webApp.end()) + "\n    <context-param>\n        <param-name>" + name
+                            + "</param-name>\n        <param-value>" + property.getValue() + "</param-value>\n    </context-param>"
+                            + configured.substring(webApp.end());
+                }
+            }
+        }
+        return configured;
+    }
+
+    private static Map<String, String> getConfiguration() {
+        Map<String, String> configuration = new LinkedHashMap<>();
+        for (String property : PARAMETERS.keySet()) {
+            String value = System.getProperty(property);
+            if (value != null && !value.trim().isEmpty()) {
+                configuration.put(property, value.trim());
+            }
+        }
+        return configuration;
+    }
+
+    private static String read(Node node) {
+        try (InputStream in = node.getAsset().openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + WEB_XML, e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.arquillian;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.spi.Container;
+import org.jboss.arquillian.container.spi.ContainerRegistry;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.event.suite.BeforeSuite;
+
+/**
+ * Starts the container of each test JVM on a free port, so that several failsafe forks can
+ * each run their own container (the <code>parallel</code> Maven profile).
+ *
+ * <p>
+ * The system property <code>container.port.properties</code> lists the settings that
+ * receive the port, separated by commas. A name containing a dot, such as
+ * <code>piranha.port</code>, is set as a system property; any other name is set as a
+ * configuration property of every registered container, as if it was given in
+ * <code>arquillian.xml</code>. The port is assigned before the containers are set up,
+ * and the test classes reach the container through <code>@ArquillianResource</code>
+ * URLs as usual.
+ * </p>
+ */
+public class ContainerPortAssigner {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerPortAssigner.class.getName());
+
+    private static final String PROPERTIES_PROP = "container.port.properties";
+
+    @Inject
+    private Instance<ContainerRegistry> containerRegistry;
+
+    /**
+     * @return whether any setting should receive a port
+     */
+    public static boolean isEnabled() {
+        return !getProperties().isEmpty();
+    }
+
+    // runs before the containers are set up
+    public void assignPort(@Observes(precedence = 100) BeforeSuite event) {
+        int port = findFreePort();
+        for (String name : getProperties().split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.indexOf('.') >= 0) {
+                System.setProperty(name, String.valueOf(port));
+            } else if (containerRegistry.get() != null) {
+                for (Container container : containerRegistry.get().getContainers()) {
+                    container.getContainerConfiguration().property(name, String.valueOf(port));
+                }
+            }
+        }
+        LOGGER.info("Using port " + port + " for the container of fork " + System.getProperty("fork.number", "1"));
+    }
+
+    private static String getProperties() {
+        return System.getProperty(PROPERTIES_PROP, "").trim();
+    }
+
+    private static int findFreePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot find a free port", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.arquillian;
+
+import org.jboss.arquillian.container.spi.client.deployment.Deployment;
+import org.jboss.arquillian.container.spi.client.deployment.DeploymentScenario;
+import org.jboss.arquillian.container.test.impl.client.deployment.event.GenerateDeployment;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.core.spi.EventContext;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+
+import ee.jakarta.tck.faces.test.util.servlet.ExpiryTriggerServlet;
+
+/**
+ * Adds the {@link ExpiryTriggerServlet} to the web archives deployed for a test class
+ * annotated with {@link ExpiryTrigger}.
+ */
+public class ExpiryTriggerDeployer {
+
+    @Inject
+    private Instance<DeploymentScenario> deploymentScenario;
+
+    // runs inside the AggregatedDeployer
+    public void generateDeployment(@Observes(precedence = 50) EventContext<GenerateDeployment> context) {
+        context.proceed();
+
+        DeploymentScenario scenario = deploymentScenario.get();
+        if (scenario == null || !context.getEvent().getTestClass().isAnnotationPresent(ExpiryTrigger.class)) {
+            return;
+        }
+        for (Deployment deployment : scenario.deployments()) {
+            if (deployment.getDescription().isArchiveDeployment() && deployment.getDescription().getArchive() instanceof WebArchive) {
+                ((WebArchive) deployment.getDescription().getArchive()).addClass(ExpiryTriggerServlet.class);
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import static org.jboss.shrinkwrap.api.ShrinkWrap.create;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.function.Predicate;
 
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
@@ -14,21 +15,56 @@ import org.jboss.shrinkwrap.api.importer.ZipImporter;
 import org.jboss.shrinkwrap.api.spec.WebArchive;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
+import ee.jakarta.tck.faces.test.util.htmlunit.AjaxWaiter;
 import ee.jakarta.tck.faces.test.util.htmlunit.DebugOptions;
 import ee.jakarta.tck.faces.test.util.htmlunit.IgnoringIncorrectnessListener;
+import ee.jakarta.tck.faces.test.util.htmlunit.LoadStatistics;
+import ee.jakarta.tck.faces.test.util.htmlunit.RequestRecorder;
+import ee.jakarta.tck.faces.test.util.htmlunit.ViewStateTracker;
+import ee.jakarta.tck.faces.test.util.htmlunit.WebClientPool;
+import ee.jakarta.tck.faces.test.util.servlet.ExpiryTriggerServlet;
 
 @RunWith(Arquillian.class)
 public abstract class ITBase {
 
+    /**
+     * Maximum time in milliseconds the wait helpers wait for the browser.
+     */
+    protected static final long WAIT_TIMEOUT = 60000;
+
+    private static final WebClientPool webClientPool = new WebClientPool(ITBase::configure);
+
     @ArquillianResource
     protected URL webUrl;
     protected WebClient webClient;
 
+    private boolean javaScriptEnabled = true;
+
+    private String testName;
+
+    @Rule
+    public TestWatcher javaScriptMode = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            testName = description.getClassName() + "#" + description.getMethodName();
+            javaScriptEnabled = description.getAnnotation(DisableJavaScript.class) == null
+                    && !ITBase.this.getClass().isAnnotationPresent(DisableJavaScript.class);
+        }
+    };
+
+    @Rule
+    public LoadGenerator loadMode = new LoadGenerator(this);
+
     @Deployment(testable = false)
     public static WebArchive createDeployment() {
         return create(ZipImporter.class, getProperty("finalName") + ".war")
@@ -36,22 +72,98 @@ public abstract class ITBase {
                 .as(WebArchive.class);
     }
     
+    /**
+     * Obtains a client from the pool shared by all tests. The client has JavaScript
+     * enabled unless the test method or class is annotated with {@link DisableJavaScript}.
+     * With <code>-Drequest.stats=true</code> its requests are recorded for the test.
+     */
     @Before
     public void setUp() {
-        webClient = new WebClient();
+        webClient = webClientPool.acquire(javaScriptEnabled);
+        RequestRecorder.setTest(webClient, testName);
+    }
+
+    private static void configure(WebClient webClient) {
         webClient.getOptions().setJavaScriptEnabled(true);
         webClient.setJavaScriptTimeout(120000);
         webClient.setIncorrectnessListener(new IgnoringIncorrectnessListener());
         DebugOptions.setDebugOptions(webClient);
+        AjaxWaiter.install(webClient);
+        RequestRecorder.install(webClient);
+        ViewStateTracker.install(webClient);
+        LoadStatistics.install(webClient);
     }
 
     protected HtmlPage getPage(String viewId) throws IOException {
         return webClient.getPage(webUrl + viewId);
     }
 
+    /**
+     * Waits until the Faces Ajax requests sent by the page have completed, which unlike
+     * {@code webClient.waitForBackgroundJavaScript(...)} returns as soon as the last
+     * response has been processed.
+     *
+     * @param page the page that sent the requests
+     * @return <code>true</code> if the requests completed in time
+     */
+    protected boolean waitForAjax(HtmlPage page) {
+        return AjaxWaiter.waitForAjax(page, WAIT_TIMEOUT);
+    }
+
+    /**
+     * Waits until the condition holds, testing it again whenever the page changes.
+     *
+     * @param page the page
+     * @param condition the condition
+     * @return <code>true</code> if the condition held in time
+     */
+    protected boolean waitUntil(HtmlPage page, Predicate<HtmlPage> condition) {
+        return AjaxWaiter.waitUntil(page, condition, WAIT_TIMEOUT);
+    }
+
+    /**
+     * Invalidates the session of the client right away, as if it timed out.
+     * The test class must be annotated with {@link ExpiryTrigger}.
+     *
+     * @return <code>false</code> if the client had no session
+     */
+    protected boolean expireSession() throws IOException {
+        return expire(ExpiryTriggerServlet.SESSION);
+    }
+
+    /**
+     * Removes the views, and everything else, stored in the session of the client, but
+     * keeps the session.
+     * The test class must be annotated with {@link ExpiryTrigger}.
+     *
+     * @return <code>false</code> if the client had no session
+     */
+    protected boolean expireViews() throws IOException {
+        return expire(ExpiryTriggerServlet.VIEWS);
+    }
+
+    private boolean expire(String what) throws IOException {
+        // loaded outside of any window so the current page stays usable
+        URL url = new URL(webUrl, ExpiryTriggerServlet.PATH.substring(1) + "?expire=" + what);
+        WebResponse response = webClient.loadWebResponse(new WebRequest(url));
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException("Expiry trigger returned " + response.getStatusCode() + " " + response.getStatusMessage());
+        }
+        return "expired".equals(response.getContentAsString().trim());
+    }
+
+    /**
+     * Resets the client and returns it to the pool. Fails the test if a view state it
+     * received exceeded the size allowed by the {@link ViewStateTracker}.
+     */
     @After
     public void tearDown() {
-        webClient.close();
+        RequestRecorder.setTest(webClient, null);
+        try {
+            ViewStateTracker.verify(webClient);
+        } finally {
+            webClientPool.release(webClient);
+        }
     }
 
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.arquillian;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.arquillian.test.api.ArquillianResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.internal.runners.statements.ExpectException;
+import org.junit.internal.runners.statements.InvokeMethod;
+import org.junit.internal.runners.statements.RunAfters;
+import org.junit.internal.runners.statements.RunBefores;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
+
+import ee.jakarta.tck.faces.test.util.htmlunit.LoadStatistics;
+
+/**
+ * Replays a test with many concurrent users once it has passed, to find concurrency bugs
+ * in view scope, flash and session handling and to measure how the implementation
+ * scales.
+ *
+ * <p>
+ * Load testing is enabled with <code>-Dload.users=N</code>, usually together with
+ * <code>-Dit.test=...</code> to select the tests to replay. Each of the N users runs the
+ * test method <code>load.iterations</code> times (default 10) on a new instance of the
+ * test class, with its own web client and therefore its own cookies, including the
+ * <code>@Before</code> and <code>@After</code> methods and the other rules of the test.
+ * The users run on virtual threads when the JVM has them, and on a pool of N platform
+ * threads otherwise. The results are measured by {@link LoadStatistics}, and the test
+ * fails if a replay failed unless <code>-Dload.failOnError=false</code>.
+ * </p>
+ */
+public class LoadGenerator implements TestRule {
+
+    private static final int ITERATIONS = Integer.getInteger("load.iterations", 10);
+
+    private static final boolean FAIL_ON_ERROR = !"false".equalsIgnoreCase(System.getProperty("load.failOnError", "true"));
+
+    private final Object test;
+
+    /**
+     * @param test the test instance the rule belongs to
+     */
+    public LoadGenerator(Object test) {
+        this.test = test;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        if (LoadStatistics.getUsers() <= 0) {
+            return base;
+        }
+
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                base.evaluate();
+                replay(description);
+            }
+        };
+    }
+
+    private void replay(Description description) throws Exception {
+        TestClass testClass = new TestClass(test.getClass());
+        FrameworkMethod method = null;
+        for (FrameworkMethod candidate : testClass.getAnnotatedMethods(Test.class)) {
+            if (candidate.getName().equals(description.getMethodName())) {
+                method = candidate;
+            }
+        }
+        if (method == null) {
+            return;
+        }
+
+        int users = LoadStatistics.getUsers();
+        LoadStatistics run = LoadStatistics.start(description.getClassName() + "#" + description.getMethodName(), users, ITERATIONS);
+        CountDownLatch ready = new CountDownLatch(users);
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = newExecutor(users);
+        try {
+            FrameworkMethod testMethod = method;
+            for (int user = 0; user < users; user++) {
+                executor.execute(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                            long start = System.nanoTime();
+                            Throwable failure = null;
+                            try {
+                                replayOnce(testClass, testMethod, description);
+                            } catch (Throwable e) {
+                                failure = e;
+                            }
+                            run.addScenario(System.nanoTime() - start, failure);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            ready.await();
+            go.countDown();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        String summary = run.stop();
+        if (FAIL_ON_ERROR && run.getScenarioFailures() > 0) {
+            throw new AssertionError("Test failed under load:\n" + summary);
+        }
+    }
+
+    /**
+     * Runs the test method on a new instance of the test class the way JUnit would.
+     */
+    private void replayOnce(TestClass testClass, FrameworkMethod method, Description description) throws Throwable {
+        Object target = testClass.getOnlyConstructor().newInstance();
+        copyResources(test, target);
+
+        Statement statement = new InvokeMethod(method, target);
+        Class<? extends Throwable> expected = method.getAnnotation(Test.class).expected();
+        if (expected != Test.None.class) {
+            statement = new ExpectException(statement, expected);
+        }
+        statement = new RunBefores(statement, testClass.getAnnotatedMethods(Before.class), target);
+        statement = new RunAfters(statement, testClass.getAnnotatedMethods(After.class), target);
+        for (TestRule rule : testClass.getAnnotatedFieldValues(target, Rule.class, TestRule.class)) {
+            if (!(rule instanceof LoadGenerator)) {
+                statement = rule.apply(statement, description);
+            }
+        }
+        statement.evaluate();
+    }
+
+    /**
+     * Copies the fields Arquillian injected, such as the URL of the deployment.
+     */
+    private static void copyResources(Object source, Object target) throws IllegalAccessException {
+        for (Class<?> type = source.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.isAnnotationPresent(ArquillianResource.class)) {
+                    field.setAccessible(true);
+                    field.set(target, field.get(source));
+                }
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor(int users) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // before Java 21
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(users, task -> {
+                Thread thread = new Thread(task, "LoadGenerator user " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import java.util.function.Predicate;
+
+import com.gargoylesoftware.htmlunit.ScriptPreProcessor;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeEvent;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeListener;
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * Waits for Faces Ajax requests and websocket pushes to complete instead of
+ * waiting a fixed amount of time.
+ *
+ * <p>
+ * {@link #install(WebClient)} appends a small hook to <code>faces.js</code> when HtmlUnit
+ * loads it. The hook counts the requests passed to <code>faces.ajax.request</code>, marks
+ * them as done once their <code>complete</code> event has been handled (the response,
+ * including any <code>success</code> or error listeners, is processed in the same
+ * JavaScript job), and counts the opened connections and received messages of the
+ * websockets used by <code>faces.push</code>.
+ * </p>
+ *
+ * <p>
+ * A request made with a <code>delay</code> that is cancelled by a later request never
+ * completes; waiting for it times out just like a fixed wait would.
+ * </p>
+ */
+public final class AjaxWaiter {
+
+    private static final String STATE = "__tckAjaxWaiter";
+
+    /**
+     * Interval in milliseconds at which the counters are read again when no DOM change
+     * wakes up the waiting thread.
+     */
+    private static final long CHECK_INTERVAL = 10;
+
+    // Updates of the counters are deferred with setTimeout so the waiter only sees
+    // them after the listeners of faces.js and the page have run.
+    private static final String HOOK = "\n;(function(w) {\n"
+            + "    var f = w.faces || w.jsf;\n"
+            + "    if (w." + STATE + " || !f || !f.ajax) { return; }\n"
+            + "    var s = w." + STATE + " = { active: 0, delayed: 0, begun: 0, opened: 0, messages: 0 };\n"
+            + "    var later = function(fn) { w.setTimeout(fn, 0); };\n"
+            + "    f.ajax.addOnEvent(function(data) {\n"
+            + "        if (data.status === 'begin') { s.begun++; s.active++; s.delayed = 0; }\n"
+            + "        else if (data.status === 'complete') { later(function() { s.active = Math.max(0, s.active - 1); }); }\n"
+            + "    });\n"
+            + "    var request = f.ajax.request;\n"
+            + "    f.ajax.request = function() {\n"
+            + "        var begun = s.begun;\n"
+            + "        s.delayed = 0;\n"
+            + "        var result = request.apply(this, arguments);\n"
+            + "        if (s.begun === begun) { s.delayed = 1; }\n"
+            + "        return result;\n"
+            + "    };\n"
+            + "    var Socket = w.WebSocket;\n"
+            + "    if (Socket) {\n"
+            + "        var Counting = function(url, protocols) {\n"
+            + "            var socket = protocols === undefined ? new Socket(url) : new Socket(url, protocols);\n"
+            + "            socket.addEventListener('open', function() { later(function() { s.opened++; }); });\n"
+            + "            socket.addEventListener('message', function() { later(function() { s.messages++; }); });\n"
+            + "            return socket;\n"
+            + "        };\n"
+            + "        Counting.prototype = Socket.prototype;\n"
+            + "        Counting.CONNECTING = 0; Counting.OPEN = 1; Counting.CLOSING = 2; Counting.CLOSED = 3;\n"
+            + "        w.WebSocket = Counting;\n"
+            + "    }\n"
+            + "})(window);\n";
+
+    private AjaxWaiter() {
+    }
+
+    /**
+     * Installs the hook on every page subsequently loaded by the given client. Any script
+     * pre processor already set on the client keeps being applied.
+     *
+     * @param webClient the client
+     */
+    public static void install(WebClient webClient) {
+        ScriptPreProcessor current = webClient.getScriptPreProcessor();
+        if (!(current instanceof HookInstaller)) {
+            webClient.setScriptPreProcessor(new HookInstaller(current));
+        }
+    }
+
+    /**
+     * Waits until all Faces Ajax requests made by the page have completed. Pages without
+     * the hook, for instance pages that do not use <code>faces.js</code>, fall back to
+     * {@link WebClient#waitForBackgroundJavaScript(long)}.
+     *
+     * @param page the page that sent the requests
+     * @param timeoutMillis the maximum time to wait
+     * @return <code>true</code> if the requests completed in time
+     */
+    public static boolean waitForAjax(HtmlPage page, long timeoutMillis) {
+        if (getState(page) == null) {
+            return page.getWebClient().waitForBackgroundJavaScript(timeoutMillis) == 0;
+        }
+        return waitUntil(page, p -> getCounter(p, "active") + getCounter(p, "delayed") == 0, timeoutMillis);
+    }
+
+    /**
+     * Waits until at least one websocket of the page has been opened.
+     *
+     * @param page the page
+     * @param timeoutMillis the maximum time to wait
+     * @return <code>true</code> if a websocket was opened in time
+     */
+    public static boolean waitForWebsocketOpen(HtmlPage page, long timeoutMillis) {
+        return waitUntil(page, p -> getCounter(p, "opened") > 0, timeoutMillis);
+    }
+
+    /**
+     * Waits until the websockets of the page have received at least the given number of
+     * messages in total.
+     *
+     * @param page the page
+     * @param count the number of messages
+     * @param timeoutMillis the maximum time to wait
+     * @return <code>true</code> if the messages were received in time
+     */
+    public static boolean waitForWebsocketMessages(HtmlPage page, int count, long timeoutMillis) {
+        return waitUntil(page, p -> getCounter(p, "messages") >= count, timeoutMillis);
+    }
+
+    /**
+     * Waits until the condition holds. The condition is tested again on each change of
+     * the DOM of the page, and at least every few milliseconds.
+     *
+     * @param page the page
+     * @param condition the condition
+     * @param timeoutMillis the maximum time to wait
+     * @return <code>true</code> if the condition held in time
+     */
+    public static boolean waitUntil(HtmlPage page, Predicate<HtmlPage> condition, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        ChangeMonitor monitor = new ChangeMonitor(page);
+        try {
+            while (!condition.test(page)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                monitor.await(Math.min(remaining, CHECK_INTERVAL));
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return condition.test(page);
+        } finally {
+            monitor.close();
+        }
+    }
+
+    private static Scriptable getState(HtmlPage page) {
+        Object window = page.getEnclosingWindow().getScriptableObject();
+        if (!(window instanceof Scriptable)) {
+            return null;
+        }
+        Object state = ScriptableObject.getProperty((Scriptable) window, STATE);
+        return state instanceof Scriptable ? (Scriptable) state : null;
+    }
+
+    private static int getCounter(HtmlPage page, String name) {
+        Scriptable state = getState(page);
+        if (state == null) {
+            return 0;
+        }
+        Object value = ScriptableObject.getProperty(state, name);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static final class HookInstaller implements ScriptPreProcessor {
+
+        private final ScriptPreProcessor delegate;
+
+        HookInstaller(ScriptPreProcessor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String preProcess(HtmlPage htmlPage, String sourceCode, String sourceName, int lineNumber, HtmlElement htmlElement) {
+            String source = sourceCode;
+            if (delegate != null) {
+                source = delegate.preProcess(htmlPage, source, sourceName, lineNumber, htmlElement);
+            }
+            if (source != null && sourceName != null && (sourceName.contains("faces.js") || sourceName.contains("jsf.js"))) {
+                source += HOOK;
+            }
+            return source;
+        }
+    }
+
+    /**
+     * Wakes up the waiting thread whenever the DOM of the page changes.
+     */
+    private static final class ChangeMonitor implements DomChangeListener, CharacterDataChangeListener, HtmlAttributeChangeListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HtmlPage page;
+
+        private boolean changed;
+
+        ChangeMonitor(HtmlPage page) {
+            this.page = page;
+            page.addDomChangeListener(this);
+            page.addCharacterDataChangeListener(this);
+            page.addHtmlAttributeChangeListener(this);
+        }
+
+        synchronized void await(long millis) throws InterruptedException {
+            if (!changed) {
+                wait(millis);
+            }
+            changed = false;
+        }
+
+        void close() {
+            page.removeDomChangeListener(this);
+            page.removeCharacterDataChangeListener(this);
+            page.removeHtmlAttributeChangeListener(this);
+        }
+
+        private synchronized void changed() {
+            changed = true;
+            notifyAll();
+        }
+
+        @Override
+        public void nodeAdded(DomChangeEvent event) {
+            changed();
+        }
+
+        @Override
+        public void nodeDeleted(DomChangeEvent event) {
+            changed();
+        }
+
+        @Override
+        public void characterDataChanged(CharacterDataChangeEvent event) {
+            changed();
+        }
+
+        @Override
+        public void attributeAdded(HtmlAttributeChangeEvent event) {
+            changed();
+        }
+
+        @Override
+        public void attributeRemoved(HtmlAttributeChangeEvent event) {
+            changed();
+        }
+
+        @Override
+        public void attributeReplaced(HtmlAttributeChangeEvent event) {
+            changed();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Measures a load run, in which the scenario of a test is replayed by many concurrent
+ * users, see {@link ee.jakarta.tck.faces.test.util.arquillian.LoadGenerator}.
+ *
+ * <p>
+ * While a run is in progress the latency and status of every request sent by a client
+ * with the statistics {@link #install(WebClient) installed} is recorded, along with the
+ * duration and outcome of every replayed scenario. When the run stops the throughput,
+ * the 50th, 95th and 99th percentile latencies and the error counts are printed and
+ * appended to <code>load.csv</code> in <code>load.stats.dir</code> (default
+ * <code>target/load-stats</code>).
+ * </p>
+ */
+public final class LoadStatistics {
+
+    private static final int USERS = Integer.getInteger("load.users", 0);
+
+    private static final String DIR = System.getProperty("load.stats.dir", "target/load-stats");
+
+    private static final int MAX_FAILURES_SHOWN = 5;
+
+    private static volatile LoadStatistics current;
+
+    private final String test;
+
+    private final int users;
+
+    private final int iterations;
+
+    private final long start = System.nanoTime();
+
+    private long stop;
+
+    private final Latencies requests = new Latencies();
+
+    private final Latencies scenarios = new Latencies();
+
+    private long requestErrors;
+
+    private long scenarioFailures;
+
+    private final Map<String, Integer> failures = new LinkedHashMap<>();
+
+    private LoadStatistics(String test, int users, int iterations) {
+        this.test = test;
+        this.users = users;
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return the number of concurrent users set with <code>-Dload.users</code>, 0 when
+     *         not load testing
+     */
+    public static int getUsers() {
+        return USERS;
+    }
+
+    /**
+     * Measures the requests of the client during load runs, if load testing is enabled.
+     *
+     * @param webClient the client
+     */
+    public static void install(WebClient webClient) {
+        if (USERS > 0 && !isInstalled(webClient)) {
+            new MeasuringWebConnection(webClient);
+        }
+    }
+
+    /**
+     * Starts measuring a run. Only one run can be in progress at a time.
+     *
+     * @param test the test being replayed
+     * @param users the number of concurrent users
+     * @param iterations the number of times each user replays the test
+     * @return the run
+     */
+    public static LoadStatistics start(String test, int users, int iterations) {
+        LoadStatistics run = new LoadStatistics(test, users, iterations);
+        current = run;
+        return run;
+    }
+
+    /**
+     * Records a replay of the scenario.
+     *
+     * @param nanos the duration of the replay
+     * @param failure why the replay failed, or <code>null</code>
+     */
+    public synchronized void addScenario(long nanos, Throwable failure) {
+        scenarios.add(nanos);
+        if (failure != null) {
+            scenarioFailures++;
+            failures.merge(String.valueOf(failure), 1, Integer::sum);
+        }
+    }
+
+    synchronized void addRequest(long nanos, int status) {
+        requests.add(nanos);
+        if (status >= 400) {
+            requestErrors++;
+        }
+    }
+
+    /**
+     * Stops measuring, and prints and writes the results.
+     *
+     * @return the summary of the results
+     */
+    public String stop() {
+        if (current == this) {
+            current = null;
+        }
+        synchronized (this) {
+            stop = System.nanoTime();
+        }
+        String summary = summary();
+        writeCsv();
+        System.out.print(summary);
+        return summary;
+    }
+
+    /**
+     * @return the number of replays that failed
+     */
+    public synchronized long getScenarioFailures() {
+        return scenarioFailures;
+    }
+
+    private synchronized String summary() {
+        double seconds = (stop - start) / 1e9;
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("[LoadStatistics] %s: %d users x %d iterations in %.1f s%n", test, users, iterations, seconds));
+        summary.append(String.format("  scenarios: %6d, %d failed, %.1f/s, %s%n", scenarios.size, scenarioFailures, scenarios.size / seconds,
+                scenarios.percentiles()));
+        summary.append(String.format("  requests:  %6d, %d errors, %.1f/s, %s%n", requests.size, requestErrors, requests.size / seconds,
+                requests.percentiles()));
+        failures.entrySet().stream().limit(MAX_FAILURES_SHOWN)
+                .forEach(failure -> summary.append(String.format("  %5dx %s%n", failure.getValue(), failure.getKey())));
+        if (failures.size() > MAX_FAILURES_SHOWN) {
+            summary.append("  ... ").append(failures.size() - MAX_FAILURES_SHOWN).append(" more distinct failures\n");
+        }
+        return summary.toString();
+    }
+
+    private synchronized void writeCsv() {
+        double seconds = (stop - start) / 1e9;
+        String suffix = System.getProperty("fork.number") == null ? "" : "-" + System.getProperty("fork.number");
+        try {
+            Path file = Files.createDirectories(Paths.get(DIR)).resolve("load" + suffix + ".csv");
+            boolean header = !Files.exists(file);
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, UTF_8, CREATE, APPEND))) {
+                if (header) {
+                    out.println("test,users,iterations,seconds,scenarios,failedScenarios,scenariosPerSecond,scenarioP50Millis,"
+                            + "scenarioP95Millis,scenarioP99Millis,requests,errorRequests,requestsPerSecond,requestP50Millis,"
+                            + "requestP95Millis,requestP99Millis,requestMaxMillis");
+                }
+                out.println(String.format(Locale.ROOT, "%s,%d,%d,%.3f,%d,%d,%.1f,%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d", test, users, iterations, seconds,
+                        scenarios.size, scenarioFailures, scenarios.size / seconds, scenarios.percentile(50), scenarios.percentile(95),
+                        scenarios.percentile(99), requests.size, requestErrors, requests.size / seconds, requests.percentile(50),
+                        requests.percentile(95), requests.percentile(99), requests.percentile(100)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the load statistics to " + DIR, e);
+        }
+    }
+
+    private static boolean isInstalled(WebClient webClient) {
+        WebConnection connection = webClient.getWebConnection();
+        while (connection instanceof WebConnectionWrapper) {
+            if (connection instanceof MeasuringWebConnection) {
+                return true;
+            }
+            connection = ((WebConnectionWrapper) connection).getWrappedWebConnection();
+        }
+        return false;
+    }
+
+    /**
+     * Durations in nanoseconds, in a growable array so that a run of many thousand
+     * requests does not box every value.
+     */
+    private static final class Latencies {
+
+        long[] values = new long[1024];
+
+        int size;
+
+        boolean sorted;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+            sorted = false;
+        }
+
+        long percentile(int percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(values, 0, size);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(values[Math.max(0, index)]);
+        }
+
+        String percentiles() {
+            return String.format("p50 %d ms, p95 %d ms, p99 %d ms, max %d ms", percentile(50), percentile(95), percentile(99),
+                    percentile(100));
+        }
+    }
+
+    private static final class MeasuringWebConnection extends WebConnectionWrapper {
+
+        MeasuringWebConnection(WebClient webClient) {
+            super(webClient);
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            LoadStatistics run = current;
+            if (run == null) {
+                return super.getResponse(request);
+            }
+
+            long start = System.nanoTime();
+            WebResponse response;
+            try {
+                response = super.getResponse(request);
+            } catch (IOException | RuntimeException e) {
+                // no response is counted as an error
+                run.addRequest(System.nanoTime() - start, 599);
+                throw e;
+            }
+            run.addRequest(System.nanoTime() - start, response.getStatusCode());
+            return response;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+
+/**
+ * Records the requests of a web client for the {@link RequestStatistics}.
+ *
+ * <p>
+ * For every request the view id (the path below the context root), the HTTP method,
+ * whether it was a Faces partial (Ajax) request, the status, the time until the response
+ * was received, and the size of the request and response bodies are recorded. The
+ * JavaScript executed after a page or partial response arrived, until the next one, is
+ * counted as the JavaScript time of that response; for a page this includes its scripts,
+ * and for an Ajax request the processing of the partial response. Time the JavaScript
+ * spends waiting for a response is not counted.
+ * </p>
+ */
+public final class RequestRecorder {
+
+    private static final String PARTIAL_PARAM = "jakarta.faces.partial.ajax";
+
+    // nesting depth of the JavaScript being run and the nanoseconds it spent waiting for responses
+    private static final ThreadLocal<long[]> javaScriptState = ThreadLocal.withInitial(() -> new long[2]);
+
+    private RequestRecorder() {
+    }
+
+    /**
+     * Records the requests of the client, if {@link RequestStatistics#isEnabled() enabled}.
+     *
+     * @param webClient the client
+     */
+    public static void install(WebClient webClient) {
+        if (!RequestStatistics.isEnabled() || find(webClient) != null) {
+            return;
+        }
+        RecordingWebConnection connection = new RecordingWebConnection(webClient);
+        if (webClient.getJavaScriptEngine() instanceof JavaScriptEngine) {
+            webClient.setJavaScriptEngine(new TimingJavaScriptEngine(webClient, connection));
+        }
+    }
+
+    /**
+     * Sets the test the following requests of the client belong to.
+     *
+     * @param webClient the client
+     * @param test the test, or <code>null</code> when the client is not in use
+     */
+    public static void setTest(WebClient webClient, String test) {
+        RecordingWebConnection connection = find(webClient);
+        if (connection != null) {
+            connection.test = test;
+            connection.current = null;
+        }
+    }
+
+    private static RecordingWebConnection find(WebClient webClient) {
+        WebConnection connection = webClient.getWebConnection();
+        while (connection instanceof WebConnectionWrapper) {
+            if (connection instanceof RecordingWebConnection) {
+                return (RecordingWebConnection) connection;
+            }
+            connection = ((WebConnectionWrapper) connection).getWrappedWebConnection();
+        }
+        return null;
+    }
+
+    static String viewId(WebRequest request) {
+        String path = request.getUrl().getPath();
+        int contextRootEnd = path.indexOf('/', 1);
+        return contextRootEnd < 0 ? path : path.substring(contextRootEnd);
+    }
+
+    private static boolean isPartial(WebRequest request) {
+        if ("partial/ajax".equals(request.getAdditionalHeaders().get("Faces-Request"))) {
+            return true;
+        }
+        for (NameValuePair parameter : request.getRequestParameters()) {
+            if (PARTIAL_PARAM.equals(parameter.getName()) || "javax.faces.partial.ajax".equals(parameter.getName())) {
+                return true;
+            }
+        }
+        String body = request.getRequestBody();
+        return body != null && (body.contains(PARTIAL_PARAM + "=true") || body.contains("javax.faces.partial.ajax=true"));
+    }
+
+    private static long requestBytes(WebRequest request) {
+        if (request.getRequestBody() != null) {
+            return request.getRequestBody().getBytes(request.getCharset() == null ? UTF_8 : request.getCharset()).length;
+        }
+        long bytes = 0;
+        for (NameValuePair parameter : request.getRequestParameters()) {
+            // name=value&
+            bytes += parameter.getName().length() + (parameter.getValue() == null ? 0 : parameter.getValue().length()) + 2;
+        }
+        return bytes;
+    }
+
+    private static boolean isDocument(WebResponse response) {
+        String contentType = response.getContentType();
+        return "text/html".equals(contentType) || "application/xhtml+xml".equals(contentType);
+    }
+
+    private static long responseBytes(WebResponse response) {
+        String contentLength = response.getResponseHeaderValue("Content-Length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                // fall back to the decoded content
+            }
+        }
+        return response.getContentLength();
+    }
+
+    private static final class RecordingWebConnection extends WebConnectionWrapper {
+
+        volatile String test;
+
+        // the request whose response is being processed
+        volatile RequestStatistics.Request current;
+
+        RecordingWebConnection(WebClient webClient) {
+            super(webClient);
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            long start = System.nanoTime();
+            WebResponse response;
+            try {
+                response = super.getResponse(request);
+            } finally {
+                long[] state = javaScriptState.get();
+                if (state[0] > 0) {
+                    state[1] += System.nanoTime() - start;
+                }
+            }
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            boolean partial = isPartial(request);
+            RequestStatistics.Request recorded = new RequestStatistics.Request(test, viewId(request), request.getHttpMethod().name(),
+                    partial, response.getStatusCode(), latency, requestBytes(request), responseBytes(response));
+            RequestStatistics.add(recorded);
+            if (partial || isDocument(response)) {
+                current = recorded;
+            }
+            return response;
+        }
+
+        void addJavaScriptTime(long nanos) {
+            RequestStatistics.Request request = current;
+            if (request != null) {
+                request.jsNanos.addAndGet(nanos);
+            }
+        }
+    }
+
+    /**
+     * Measures the time spent in JavaScript, not counting nested calls twice.
+     */
+    private static final class TimingJavaScriptEngine extends JavaScriptEngine {
+
+        private final RecordingWebConnection connection;
+
+        TimingJavaScriptEngine(WebClient webClient, RecordingWebConnection connection) {
+            super(webClient);
+            this.connection = connection;
+        }
+
+        @Override
+        public Object execute(HtmlPage page, Scriptable scope, Script script) {
+            long start = enter();
+            try {
+                return super.execute(page, scope, script);
+            } finally {
+                exit(start);
+            }
+        }
+
+        @Override
+        public Object callFunction(HtmlPage page, Function function, Scriptable thisObject, Object[] args, DomNode node) {
+            long start = enter();
+            try {
+                return super.callFunction(page, function, thisObject, args, node);
+            } finally {
+                exit(start);
+            }
+        }
+
+        @Override
+        public Object callFunction(HtmlPage page, Function function, Scriptable scope, Scriptable thisObject, Object[] args) {
+            long start = enter();
+            try {
+                return super.callFunction(page, function, scope, thisObject, args);
+            } finally {
+                exit(start);
+            }
+        }
+
+        private static long enter() {
+            long[] state = javaScriptState.get();
+            if (state[0]++ > 0) {
+                return -1;
+            }
+            state[1] = 0;
+            return System.nanoTime();
+        }
+
+        private void exit(long start) {
+            long[] state = javaScriptState.get();
+            state[0]--;
+            if (start != -1) {
+                connection.addJavaScriptTime(System.nanoTime() - start - state[1]);
+            }
+        }
+    }
+}
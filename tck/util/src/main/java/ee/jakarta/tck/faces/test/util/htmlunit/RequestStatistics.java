@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingLong;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Collects the requests recorded by {@link RequestRecorder} and writes them out when the
+ * JVM exits, which for failsafe is once per test module.
+ *
+ * <p>
+ * Recording is enabled with <code>-Drequest.stats=true</code>. The reports are written to
+ * <code>request.stats.dir</code> (default <code>target/request-stats</code>):
+ * </p>
+ * <ul>
+ * <li><code>requests.csv</code> and <code>requests.json</code>, one entry per request</li>
+ * <li><code>tests.csv</code> and <code>tests.json</code>, the totals per test</li>
+ * <li><code>summary.txt</code>, the <code>request.stats.slowest</code> (default 10) slowest
+ * requests and tests, which is also printed</li>
+ * </ul>
+ * <p>
+ * When the tests run in several forks the file names end with the fork number.
+ * </p>
+ */
+public final class RequestStatistics {
+
+    private static final boolean ENABLED = Boolean.getBoolean("request.stats");
+
+    private static final String DIR = System.getProperty("request.stats.dir", "target/request-stats");
+
+    private static final int SLOWEST = Integer.getInteger("request.stats.slowest", 10);
+
+    private static final List<Request> requests = new ArrayList<>();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(RequestStatistics::writeReports, "RequestStatistics reports"));
+        }
+    }
+
+    private RequestStatistics() {
+    }
+
+    /**
+     * @return whether requests are recorded
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    static void add(Request request) {
+        synchronized (requests) {
+            requests.add(request);
+        }
+    }
+
+    /**
+     * Writes the reports for the requests recorded so far.
+     */
+    public static void writeReports() {
+        List<Request> recorded;
+        synchronized (requests) {
+            recorded = new ArrayList<>(requests);
+        }
+        if (recorded.isEmpty()) {
+            return;
+        }
+
+        Map<String, TestTotals> tests = new LinkedHashMap<>();
+        for (Request request : recorded) {
+            tests.computeIfAbsent(request.test, TestTotals::new).add(request);
+        }
+        List<TestTotals> totals = new ArrayList<>(tests.values());
+
+        String suffix = System.getProperty("fork.number") == null ? "" : "-" + System.getProperty("fork.number");
+        try {
+            Path dir = Files.createDirectories(Paths.get(DIR));
+            try (PrintWriter out = writer(dir.resolve("requests" + suffix + ".csv"))) {
+                out.println("test,viewId,method,partial,status,latencyMillis,requestBytes,responseBytes,jsMillis");
+                recorded.forEach(request -> out.println(request.toCsv()));
+            }
+            try (PrintWriter out = writer(dir.resolve("requests" + suffix + ".json"))) {
+                writeJson(out, recorded, Request::toJson);
+            }
+            try (PrintWriter out = writer(dir.resolve("tests" + suffix + ".csv"))) {
+                out.println("test,requests,partialRequests,latencyMillis,slowestMillis,responseBytes,jsMillis");
+                totals.forEach(test -> out.println(test.toCsv()));
+            }
+            try (PrintWriter out = writer(dir.resolve("tests" + suffix + ".json"))) {
+                writeJson(out, totals, TestTotals::toJson);
+            }
+
+            String summary = summary(recorded, totals);
+            try (PrintWriter out = writer(dir.resolve("summary" + suffix + ".txt"))) {
+                out.print(summary);
+            }
+            System.out.print(summary);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the request statistics to " + DIR, e);
+        }
+    }
+
+    private static String summary(List<Request> recorded, List<TestTotals> totals) {
+        StringBuilder summary = new StringBuilder();
+        summary.append("[RequestStatistics] ").append(recorded.size()).append(" requests in ").append(totals.size()).append(" tests\n");
+
+        summary.append("Slowest requests:\n");
+        recorded.stream().sorted(comparingLong((Request request) -> request.latencyMillis).reversed()).limit(SLOWEST)
+                .forEach(request -> summary.append(String.format("  %6d ms  %-4s %-7s %s (%s)%n", request.latencyMillis,
+                        request.method, request.partial ? "partial" : "", request.viewId, request.test)));
+
+        summary.append("Slowest tests:\n");
+        totals.stream().sorted(comparingLong((TestTotals test) -> test.latencyMillis + test.jsMillis()).reversed()).limit(SLOWEST)
+                .forEach(test -> summary.append(String.format("  %6d ms  %4d requests  %6d ms JavaScript  %s%n", test.latencyMillis,
+                        test.requests, test.jsMillis(), test.test)));
+        return summary.toString();
+    }
+
+    private static PrintWriter writer(Path file) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(file, UTF_8));
+    }
+
+    private static <T> void writeJson(PrintWriter out, List<T> values, Function<T, String> toJson) {
+        out.println("[");
+        for (int i = 0; i < values.size(); i++) {
+            out.print("  ");
+            out.print(toJson.apply(values.get(i)));
+            out.println(i < values.size() - 1 ? "," : "");
+        }
+        out.println("]");
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * One recorded request. The JavaScript time is added while the response is processed.
+     */
+    static final class Request {
+
+        final String test;
+
+        final String viewId;
+
+        final String method;
+
+        final boolean partial;
+
+        final int status;
+
+        final long latencyMillis;
+
+        final long requestBytes;
+
+        final long responseBytes;
+
+        final AtomicLong jsNanos = new AtomicLong();
+
+        Request(String test, String viewId, String method, boolean partial, int status, long latencyMillis, long requestBytes,
+                long responseBytes) {
+            this.test = test;
+            this.viewId = viewId;
+            this.method = method;
+            this.partial = partial;
+            this.status = status;
+            this.latencyMillis = latencyMillis;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+        long jsMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(jsNanos.get());
+        }
+
+        String toCsv() {
+            return csv(test) + ',' + csv(viewId) + ',' + method + ',' + partial + ',' + status + ',' + latencyMillis + ',' + requestBytes
+                    + ',' + responseBytes + ',' + jsMillis();
+        }
+
+        String toJson() {
+            return "{\"test\": " + json(test) + ", \"viewId\": " + json(viewId) + ", \"method\": " + json(method) + ", \"partial\": "
+                    + partial + ", \"status\": " + status + ", \"latencyMillis\": " + latencyMillis + ", \"requestBytes\": "
+                    + requestBytes + ", \"responseBytes\": " + responseBytes + ", \"jsMillis\": " + jsMillis() + "}";
+        }
+    }
+
+    private static final class TestTotals {
+
+        final String test;
+
+        int requests;
+
+        int partialRequests;
+
+        long latencyMillis;
+
+        long slowestMillis;
+
+        long responseBytes;
+
+        long jsNanos;
+
+        TestTotals(String test) {
+            this.test = test;
+        }
+
+        void add(Request request) {
+            requests++;
+            if (request.partial) {
+                partialRequests++;
+            }
+            latencyMillis += request.latencyMillis;
+            slowestMillis = Math.max(slowestMillis, request.latencyMillis);
+            responseBytes += request.responseBytes;
+            jsNanos += request.jsNanos.get();
+        }
+
+        long jsMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(jsNanos);
+        }
+
+        String toCsv() {
+            return csv(test) + ',' + requests + ',' + partialRequests + ',' + latencyMillis + ',' + slowestMillis + ',' + responseBytes + ','
+                    + jsMillis();
+        }
+
+        String toJson() {
+            return "{\"test\": " + json(test) + ", \"requests\": " + requests + ", \"partialRequests\": " + partialRequests
+                    + ", \"latencyMillis\": " + latencyMillis + ", \"slowestMillis\": " + slowestMillis + ", \"responseBytes\": "
+                    + responseBytes + ", \"jsMillis\": " + jsMillis() + "}";
+        }
+    }
+}
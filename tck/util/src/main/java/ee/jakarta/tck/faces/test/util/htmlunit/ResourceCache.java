@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Cache of a web client that shares the Faces library resources, such as
+ * <code>faces.js</code>, with all other web clients of the JVM it is installed on.
+ *
+ * <p>
+ * Responses of the Faces resource handler (<code>/jakarta.faces.resource/...</code>) are
+ * kept by URL in a JVM wide store, together with their <code>ETag</code> and
+ * <code>Last-Modified</code> headers. Resources that carry a version (<code>v=</code>) and
+ * the resources of the Faces implementation itself (<code>ln=jakarta.faces</code>) are
+ * served from the store without a request; other resources are revalidated with a
+ * conditional request. The script HtmlUnit compiled from a resource is kept with it, so
+ * the same script is not parsed again by the next test.
+ * </p>
+ *
+ * <p>
+ * All other responses are cached by the {@link Cache} superclass for the one client only,
+ * with its default size. Clearing the cache, as closing the client does, only empties
+ * that part, so those responses are not shared across tests and sessions.
+ * </p>
+ *
+ * <p>
+ * The cached resources are limited to <code>webclient.resource.cache.size</code> bytes
+ * (default 32 MB), least recently used first. The hit rate is printed when the JVM exits.
+ * </p>
+ */
+public final class ResourceCache extends Cache {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum size in bytes property
+     */
+    public static final String SIZE_PROP = "webclient.resource.cache.size";
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final Resources RESOURCES = new Resources(Long.getLong(SIZE_PROP, 32L * 1024 * 1024));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (RESOURCES.getRequestCount() > 0) {
+                System.out.println(RESOURCES.getStatistics());
+            }
+        }, "ResourceCache statistics"));
+    }
+
+    private ResourceCache() {
+    }
+
+    /**
+     * Gives the client a cache of its own that shares the library resources, and wraps its
+     * web connection so that library resources are served from them.
+     *
+     * @param webClient the client
+     */
+    public static void install(WebClient webClient) {
+        webClient.setCache(new ResourceCache());
+        if (!(webClient.getWebConnection() instanceof CachingWebConnection)) {
+            new CachingWebConnection(webClient, RESOURCES);
+        }
+    }
+
+    /**
+     * @return the number of library resource requests answered without a request to the
+     *         server
+     */
+    public long getHitCount() {
+        return RESOURCES.hits.get();
+    }
+
+    /**
+     * @return the number of library resource requests answered from the cache after the
+     *         server confirmed the resource had not changed
+     */
+    public long getRevalidatedCount() {
+        return RESOURCES.revalidated.get();
+    }
+
+    /**
+     * @return the number of library resource requests for which the resource was
+     *         downloaded
+     */
+    public long getMissCount() {
+        return RESOURCES.misses.get();
+    }
+
+    /**
+     * @return the number of times a script compiled for an earlier request was reused
+     */
+    public long getCompiledReuseCount() {
+        return RESOURCES.compiledReused.get();
+    }
+
+    /**
+     * @return a one line summary of the counters of the shared library resources
+     */
+    public String getStatistics() {
+        return RESOURCES.getStatistics();
+    }
+
+    @Override
+    public WebResponse getCachedResponse(WebRequest request) {
+        if (isLibraryResource(request)) {
+            // always pass through the connection, which validates the resource
+            return null;
+        }
+        return super.getCachedResponse(request);
+    }
+
+    @Override
+    public Object getCachedObject(WebRequest request) {
+        if (!isLibraryResource(request)) {
+            return super.getCachedObject(request);
+        }
+        Entry entry = RESOURCES.get(key(request));
+        Object compiled = entry == null ? null : entry.compiled;
+        if (compiled != null) {
+            RESOURCES.compiledReused.incrementAndGet();
+        }
+        return compiled;
+    }
+
+    @Override
+    public boolean cacheIfPossible(WebRequest request, WebResponse response, Object toCache) {
+        if (!isLibraryResource(request)) {
+            return super.cacheIfPossible(request, response, toCache);
+        }
+        if (toCache == null) {
+            return false;
+        }
+        Entry entry = RESOURCES.get(key(request));
+        if (entry != null && entry.isSameVersion(response)) {
+            entry.compiled = toCache;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLibraryResource(WebRequest request) {
+        if (request.getHttpMethod() != HttpMethod.GET) {
+            return false;
+        }
+        String path = request.getUrl().getPath();
+        return path.contains("/jakarta.faces.resource/") || path.contains("/javax.faces.resource/");
+    }
+
+    private static boolean isImmutable(WebRequest request) {
+        String query = request.getUrl().getQuery();
+        if (query == null) {
+            return false;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("v=") || parameter.equals("ln=jakarta.faces") || parameter.equals("ln=javax.faces")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(WebRequest request) {
+        return request.getUrl().toExternalForm();
+    }
+
+    /**
+     * The library resources shared by all clients, limited to a number of bytes.
+     */
+    private static final class Resources {
+
+        private final long maxBytes;
+
+        private final Map<String, Entry> resources = new LinkedHashMap<>(64, 0.75f, true);
+
+        // guarded by resources
+        private long bytes;
+
+        final AtomicLong hits = new AtomicLong();
+
+        final AtomicLong revalidated = new AtomicLong();
+
+        final AtomicLong misses = new AtomicLong();
+
+        final AtomicLong compiledReused = new AtomicLong();
+
+        Resources(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        long getRequestCount() {
+            return hits.get() + revalidated.get() + misses.get();
+        }
+
+        String getStatistics() {
+            long requests = getRequestCount();
+            long served = hits.get() + revalidated.get();
+            int entries;
+            long size;
+            synchronized (resources) {
+                entries = resources.size();
+                size = bytes;
+            }
+            return "[ResourceCache] requests: " + requests + ", hits: " + hits.get() + ", revalidated: " + revalidated.get()
+                    + ", misses: " + misses.get() + ", hit rate: " + (requests == 0 ? 0 : served * 100 / requests)
+                    + "%, compiled scripts reused: " + compiledReused.get() + ", entries: " + entries + ", bytes: " + size;
+        }
+
+        Entry get(String key) {
+            synchronized (resources) {
+                return resources.get(key);
+            }
+        }
+
+        void put(String key, Entry entry) {
+            synchronized (resources) {
+                Entry previous = resources.put(key, entry);
+                if (previous != null) {
+                    bytes -= previous.data.getBody().length;
+                }
+                bytes += entry.data.getBody().length;
+                Iterator<Entry> eldest = resources.values().iterator();
+                while (bytes > maxBytes && eldest.hasNext()) {
+                    bytes -= eldest.next().data.getBody().length;
+                    eldest.remove();
+                }
+            }
+        }
+
+        void remove(String key) {
+            synchronized (resources) {
+                Entry previous = resources.remove(key);
+                if (previous != null) {
+                    bytes -= previous.data.getBody().length;
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final WebResponseData data;
+
+        final String etag;
+
+        final String lastModified;
+
+        final boolean immutable;
+
+        volatile Object compiled;
+
+        Entry(WebResponseData data, String etag, String lastModified, boolean immutable) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.immutable = immutable;
+        }
+
+        boolean isSameVersion(WebResponse response) {
+            return equal(etag, response.getResponseHeaderValue("ETag"))
+                    && equal(lastModified, response.getResponseHeaderValue("Last-Modified"));
+        }
+
+        WebResponse responseFor(WebRequest request, long loadTime) {
+            return new WebResponse(data, request, loadTime);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Serves library resources from the cache and stores the ones it downloads.
+     */
+    private static final class CachingWebConnection extends WebConnectionWrapper {
+
+        private final Resources cache;
+
+        CachingWebConnection(WebClient webClient, Resources cache) {
+            super(webClient);
+            this.cache = cache;
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            Map<String, String> headers = request.getAdditionalHeaders();
+            if (!isLibraryResource(request) || headers.containsKey(IF_NONE_MATCH) || headers.containsKey(IF_MODIFIED_SINCE)) {
+                // leave requests made by the test itself alone
+                return super.getResponse(request);
+            }
+
+            String key = key(request);
+            Entry entry = cache.get(key);
+            if (entry != null && entry.immutable) {
+                cache.hits.incrementAndGet();
+                return entry.responseFor(request, 0);
+            }
+
+            long start = System.currentTimeMillis();
+            WebResponse response;
+            if (entry != null) {
+                if (entry.etag != null) {
+                    request.setAdditionalHeader(IF_NONE_MATCH, entry.etag);
+                }
+                if (entry.lastModified != null) {
+                    request.setAdditionalHeader(IF_MODIFIED_SINCE, entry.lastModified);
+                }
+                try {
+                    response = super.getResponse(request);
+                } finally {
+                    request.removeAdditionalHeader(IF_NONE_MATCH);
+                    request.removeAdditionalHeader(IF_MODIFIED_SINCE);
+                }
+                if (response.getStatusCode() == 304) {
+                    response.cleanUp();
+                    cache.revalidated.incrementAndGet();
+                    return entry.responseFor(request, System.currentTimeMillis() - start);
+                }
+            } else {
+                response = super.getResponse(request);
+            }
+
+            cache.misses.incrementAndGet();
+            store(key, request, response);
+            return response;
+        }
+
+        private void store(String key, WebRequest request, WebResponse response) throws IOException {
+            String etag = response.getResponseHeaderValue("ETag");
+            String lastModified = response.getResponseHeaderValue("Last-Modified");
+            boolean immutable = isImmutable(request);
+            String cacheControl = response.getResponseHeaderValue("Cache-Control");
+            if (response.getStatusCode() != 200 || (etag == null && lastModified == null && !immutable)
+                    || (cacheControl != null && cacheControl.contains("no-store"))) {
+                cache.remove(key);
+                return;
+            }
+
+            byte[] body;
+            try (InputStream in = response.getContentAsStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int n; (n = in.read(buffer)) != -1;) {
+                    out.write(buffer, 0, n);
+                }
+                body = out.toByteArray();
+            }
+            if (body.length > cache.maxBytes / 4) {
+                return;
+            }
+
+            // the body is stored decoded
+            List<NameValuePair> headers = new ArrayList<>();
+            for (NameValuePair header : response.getResponseHeaders()) {
+                if (!"Content-Encoding".equalsIgnoreCase(header.getName()) && !"Content-Length".equalsIgnoreCase(header.getName())) {
+                    headers.add(header);
+                }
+            }
+            cache.put(key, new Entry(new WebResponseData(body, response.getStatusCode(), response.getStatusMessage(), headers), etag,
+                    lastModified, immutable));
+        }
+    }
+}
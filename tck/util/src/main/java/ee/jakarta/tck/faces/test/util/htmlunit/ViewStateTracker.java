@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Measures the <code>jakarta.faces.ViewState</code> of every page and partial response
+ * received by a web client, and checks it against size thresholds.
+ *
+ * <p>
+ * The size of the view state field of a page, or of the
+ * <code>&lt;update id="...ViewState..."&gt;</code> of a partial response, is aggregated per
+ * view and per state saving configuration, and written to
+ * <code>viewstate.stats.dir</code> (default <code>target/viewstate-stats</code>) as
+ * <code>viewstate.csv</code> when the JVM exits. The configuration is taken from the
+ * <code>webapp.stateSavingMethod</code>, <code>webapp.partialStateSaving</code> and
+ * <code>webapp.serializeServerState</code> system properties; without the first the
+ * method is derived from the view state itself.
+ * </p>
+ *
+ * <p>
+ * Tracking is enabled with <code>-Dviewstate.stats=true</code> or by setting a threshold:
+ * <code>viewstate.max.bytes</code> applies to all view states, and
+ * <code>viewstate.max.bytes.client</code> and <code>viewstate.max.bytes.server</code> to
+ * those of one state saving method. A view state over its threshold fails the test that
+ * received it, see {@link #verify(WebClient)}.
+ * </p>
+ */
+public final class ViewStateTracker {
+
+    private static final String DIR = System.getProperty("viewstate.stats.dir", "target/viewstate-stats");
+
+    private static final long MAX_BYTES = Long.getLong("viewstate.max.bytes", -1);
+
+    private static final boolean ENABLED = Boolean.getBoolean("viewstate.stats") || MAX_BYTES >= 0
+            || System.getProperty("viewstate.max.bytes.client") != null || System.getProperty("viewstate.max.bytes.server") != null;
+
+    private static final Pattern FIELD = Pattern.compile("<input\\b[^>]*\\bname=([\"'])[^\"']*ViewState[^\"']*\\1[^>]*>",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern VALUE = Pattern.compile("\\bvalue=([\"'])(.*?)\\1", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern UPDATE = Pattern.compile("<update\\s+id=([\"'])[^\"']*ViewState[^\"']*\\1\\s*>\\s*<!\\[CDATA\\[(.*?)\\]\\]>",
+            Pattern.DOTALL);
+
+    private static final Pattern SERVER_STATE = Pattern.compile("-?\\d+:-?\\d+");
+
+    // by configuration, then view and kind
+    private static final Map<String, Map<String, Sizes>> sizes = new TreeMap<>();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ViewStateTracker::writeReport, "ViewStateTracker report"));
+        }
+    }
+
+    private ViewStateTracker() {
+    }
+
+    /**
+     * Tracks the view states received by the client, if enabled.
+     *
+     * @param webClient the client
+     */
+    public static void install(WebClient webClient) {
+        if (ENABLED && find(webClient) == null) {
+            new TrackingWebConnection(webClient);
+        }
+    }
+
+    /**
+     * Fails if any view state the client received since the last call exceeded its
+     * threshold.
+     *
+     * @param webClient the client
+     * @throws AssertionError listing the view states over their threshold
+     */
+    public static void verify(WebClient webClient) {
+        TrackingWebConnection connection = find(webClient);
+        if (connection == null) {
+            return;
+        }
+
+        List<String> violations;
+        synchronized (connection.violations) {
+            violations = new ArrayList<>(connection.violations);
+            connection.violations.clear();
+        }
+        if (!violations.isEmpty()) {
+            throw new AssertionError("View state too large:\n  " + String.join("\n  ", violations));
+        }
+    }
+
+    /**
+     * Writes the sizes measured so far.
+     */
+    public static void writeReport() {
+        synchronized (sizes) {
+            if (sizes.isEmpty()) {
+                return;
+            }
+        }
+
+        StringBuilder summary = new StringBuilder("[ViewStateTracker]\n");
+        String suffix = System.getProperty("fork.number") == null ? "" : "-" + System.getProperty("fork.number");
+        try {
+            Path dir = Files.createDirectories(Paths.get(DIR));
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("viewstate" + suffix + ".csv"), UTF_8))) {
+                out.println("configuration,viewId,kind,count,minBytes,maxBytes,averageBytes");
+                synchronized (sizes) {
+                    for (Map.Entry<String, Map<String, Sizes>> configuration : sizes.entrySet()) {
+                        long max = 0;
+                        for (Map.Entry<String, Sizes> view : configuration.getValue().entrySet()) {
+                            Sizes size = view.getValue();
+                            out.println(configuration.getKey() + ',' + view.getKey() + ',' + size.count + ',' + size.min + ',' + size.max
+                                    + ',' + size.total / size.count);
+                            max = Math.max(max, size.max);
+                        }
+                        summary.append("  ").append(configuration.getKey()).append(": ").append(configuration.getValue().size())
+                                .append(" views, largest view state ").append(max).append(" bytes\n");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the view state sizes to " + DIR, e);
+        }
+        System.out.print(summary);
+    }
+
+    private static TrackingWebConnection find(WebClient webClient) {
+        WebConnection connection = webClient.getWebConnection();
+        while (connection instanceof WebConnectionWrapper) {
+            if (connection instanceof TrackingWebConnection) {
+                return (TrackingWebConnection) connection;
+            }
+            connection = ((WebConnectionWrapper) connection).getWrappedWebConnection();
+        }
+        return null;
+    }
+
+    private static String configuration(String viewState) {
+        String method = System.getProperty("webapp.stateSavingMethod");
+        if (method == null || method.isEmpty()) {
+            method = SERVER_STATE.matcher(viewState).matches() ? "server" : "client";
+        }
+        return method.toLowerCase() + "/partial=" + System.getProperty("webapp.partialStateSaving", "default") + "/serialize="
+                + System.getProperty("webapp.serializeServerState", "default");
+    }
+
+    private static long threshold(String configuration) {
+        String method = configuration.substring(0, configuration.indexOf('/'));
+        return Long.getLong("viewstate.max.bytes." + method, MAX_BYTES);
+    }
+
+    private static final class Sizes {
+
+        long count;
+
+        long min = Long.MAX_VALUE;
+
+        long max;
+
+        long total;
+
+        void add(long bytes) {
+            count++;
+            min = Math.min(min, bytes);
+            max = Math.max(max, bytes);
+            total += bytes;
+        }
+    }
+
+    private static final class TrackingWebConnection extends WebConnectionWrapper {
+
+        final List<String> violations = new ArrayList<>();
+
+        TrackingWebConnection(WebClient webClient) {
+            super(webClient);
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            WebResponse response = super.getResponse(request);
+
+            String contentType = response.getContentType();
+            if ("text/html".equals(contentType) || "application/xhtml+xml".equals(contentType)) {
+                Matcher field = FIELD.matcher(response.getContentAsString());
+                // all forms of a page share the view state, one is enough
+                if (field.find()) {
+                    Matcher value = VALUE.matcher(field.group());
+                    if (value.find()) {
+                        track(request, "page", value.group(2));
+                    }
+                }
+            } else if ("text/xml".equals(contentType) || "application/xml".equals(contentType)) {
+                Matcher update = UPDATE.matcher(response.getContentAsString());
+                if (update.find()) {
+                    track(request, "partial", update.group(2));
+                }
+            }
+            return response;
+        }
+
+        private void track(WebRequest request, String kind, String viewState) {
+            long bytes = viewState.getBytes(UTF_8).length;
+            String configuration = configuration(viewState);
+            String view = RequestRecorder.viewId(request) + ',' + kind;
+            synchronized (sizes) {
+                sizes.computeIfAbsent(configuration, key -> new TreeMap<>()).computeIfAbsent(view, key -> new Sizes()).add(bytes);
+            }
+
+            long threshold = threshold(configuration);
+            if (threshold >= 0 && bytes > threshold) {
+                synchronized (violations) {
+                    violations.add(RequestRecorder.viewId(request) + " (" + kind + ", " + configuration + "): " + bytes + " bytes, maximum "
+                            + threshold);
+                }
+            }
+        }
+    }
+}
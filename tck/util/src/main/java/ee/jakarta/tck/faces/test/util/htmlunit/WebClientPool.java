@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.htmlunit;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebWindowListener;
+
+/**
+ * A pool of {@link WebClient} instances that are reused across tests.
+ *
+ * <p>
+ * All clients share the library resources of the {@link ResourceCache}, so scripts such as
+ * <code>faces.js</code> are downloaded and compiled once per JVM, and a reused client keeps
+ * its initialized JavaScript engine. When a client is released its windows are closed, which
+ * discards the pages and their JavaScript state, its cookies and the other responses it
+ * cached are cleared, and any request headers, window listeners, handlers and options a
+ * test changed are put back the way the pool handed them out. A client that was closed by
+ * the test is not reused.
+ * </p>
+ *
+ * <p>
+ * The system property <code>webclient.pool=false</code> disables reuse, and
+ * <code>webclient.pool.size</code> sets the number of idle clients kept per JavaScript
+ * mode (default 2).
+ * </p>
+ */
+public class WebClientPool {
+
+    private static final boolean POOLING = !"false".equalsIgnoreCase(System.getProperty("webclient.pool", "true"));
+
+    private static final int MAX_IDLE = Integer.getInteger("webclient.pool.size", 2);
+
+    private final Consumer<WebClient> configuration;
+
+    private final Deque<PooledWebClient> withJavaScript = new ArrayDeque<>();
+
+    private final Deque<PooledWebClient> withoutJavaScript = new ArrayDeque<>();
+
+    /**
+     * @param configuration applied to every new client before it is handed out for the
+     *        first time
+     */
+    public WebClientPool(Consumer<WebClient> configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns a configured client, reusing an idle one if possible.
+     *
+     * @param javaScriptEnabled whether the client runs JavaScript
+     * @return the client, to be returned with {@link #release(WebClient)}
+     */
+    public WebClient acquire(boolean javaScriptEnabled) {
+        Deque<PooledWebClient> idle = javaScriptEnabled ? withJavaScript : withoutJavaScript;
+        synchronized (idle) {
+            PooledWebClient webClient = idle.pollFirst();
+            if (webClient != null) {
+                return webClient;
+            }
+        }
+
+        PooledWebClient webClient = new PooledWebClient(javaScriptEnabled);
+        ResourceCache.install(webClient);
+        configuration.accept(webClient);
+        webClient.getOptions().setJavaScriptEnabled(javaScriptEnabled);
+        webClient.remember();
+        return webClient;
+    }
+
+    /**
+     * Resets the client and keeps it for reuse, or closes it if it cannot be reused.
+     *
+     * @param webClient a client obtained from {@link #acquire(boolean)}
+     */
+    public void release(WebClient webClient) {
+        if (!(webClient instanceof PooledWebClient)) {
+            webClient.close();
+            return;
+        }
+
+        PooledWebClient pooled = (PooledWebClient) webClient;
+        if (POOLING && pooled.reset()) {
+            Deque<PooledWebClient> idle = pooled.javaScriptEnabled ? withJavaScript : withoutJavaScript;
+            synchronized (idle) {
+                if (idle.size() < MAX_IDLE) {
+                    idle.addFirst(pooled);
+                    return;
+                }
+            }
+        }
+        pooled.close();
+    }
+
+    private static final class PooledWebClient extends WebClient {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean javaScriptEnabled;
+
+        private final Set<String> requestHeaders = new LinkedHashSet<>();
+
+        private final List<WebWindowListener> windowListeners = new ArrayList<>();
+
+        private final List<Runnable> handlers = new ArrayList<>();
+
+        private final Map<Method, Object> options = new LinkedHashMap<>();
+
+        // changes are only recorded once the pool has configured the client
+        private boolean tracking;
+
+        private boolean closed;
+
+        PooledWebClient(boolean javaScriptEnabled) {
+            this.javaScriptEnabled = javaScriptEnabled;
+        }
+
+        @Override
+        public void addRequestHeader(String name, String value) {
+            super.addRequestHeader(name, value);
+            if (tracking) {
+                requestHeaders.add(name);
+            }
+        }
+
+        @Override
+        public void addWebWindowListener(WebWindowListener listener) {
+            super.addWebWindowListener(listener);
+            if (tracking) {
+                windowListeners.add(listener);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+
+        void remember() {
+            handlers.add(keep(getAjaxController(), this::setAjaxController));
+            handlers.add(keep(getAlertHandler(), this::setAlertHandler));
+            handlers.add(keep(getAppletConfirmHandler(), this::setAppletConfirmHandler));
+            handlers.add(keep(getAttachmentHandler(), this::setAttachmentHandler));
+            handlers.add(keep(getCache(), this::setCache));
+            handlers.add(keep(getConfirmHandler(), this::setConfirmHandler));
+            handlers.add(keep(getCookieManager(), this::setCookieManager));
+            handlers.add(keep(getCredentialsProvider(), this::setCredentialsProvider));
+            handlers.add(keep(getCssErrorHandler(), this::setCssErrorHandler));
+            handlers.add(keep(getFrameContentHandler(), this::setFrameContentHandler));
+            handlers.add(keep(getHTMLParserListener(), this::setHTMLParserListener));
+            handlers.add(keep(getIncorrectnessListener(), this::setIncorrectnessListener));
+            handlers.add(keep(getJavaScriptErrorListener(), this::setJavaScriptErrorListener));
+            handlers.add(keep(getJavaScriptTimeout(), this::setJavaScriptTimeout));
+            handlers.add(keep(getOnbeforeunloadHandler(), this::setOnbeforeunloadHandler));
+            handlers.add(keep(getPageCreator(), this::setPageCreator));
+            handlers.add(keep(getPromptHandler(), this::setPromptHandler));
+            handlers.add(keep(getRefreshHandler(), this::setRefreshHandler));
+            handlers.add(keep(getScriptPreProcessor(), this::setScriptPreProcessor));
+            handlers.add(keep(getStatusHandler(), this::setStatusHandler));
+            handlers.add(keep(getWebConnection(), this::setWebConnection));
+            handlers.add(keep(getWebStartHandler(), this::setWebStartHandler));
+
+            try {
+                for (PropertyDescriptor property : Introspector.getBeanInfo(WebClientOptions.class).getPropertyDescriptors()) {
+                    if (property.getReadMethod() != null && property.getWriteMethod() != null) {
+                        options.put(property.getWriteMethod(), property.getReadMethod().invoke(getOptions()));
+                    }
+                }
+            } catch (IntrospectionException | ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot read the options of " + this, e);
+            }
+            tracking = true;
+        }
+
+        /**
+         * @return false if the client cannot be reused
+         */
+        boolean reset() {
+            if (closed) {
+                return false;
+            }
+            try {
+                handlers.forEach(Runnable::run);
+                for (Map.Entry<Method, Object> option : options.entrySet()) {
+                    option.getKey().invoke(getOptions(), option.getValue());
+                }
+                requestHeaders.forEach(this::removeRequestHeader);
+                requestHeaders.clear();
+                windowListeners.forEach(this::removeWebWindowListener);
+                windowListeners.clear();
+
+                // closing the last window opens a new, empty one
+                for (TopLevelWindow window : new ArrayList<>(getTopLevelWindows())) {
+                    window.close();
+                }
+                getCookieManager().clearCookies();
+                getCache().clear();
+                return true;
+            } catch (RuntimeException | ReflectiveOperationException e) {
+                return false;
+            }
+        }
+
+        private static <T> Runnable keep(T value, Consumer<T> setter) {
+            return () -> setter.accept(value);
+        }
+    }
+}
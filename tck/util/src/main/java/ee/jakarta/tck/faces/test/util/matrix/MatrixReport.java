@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.matrix;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Combines the results of the configuration variants of a test module run by the
+ * <code>matrix</code> Maven profile.
+ *
+ * <p>
+ * Every sub directory of the matrix directory (the first argument, default
+ * <code>target/matrix</code>) is a variant, holding the failsafe reports of its run in
+ * <code>failsafe-reports</code> and the {@link ee.jakarta.tck.faces.test.util.htmlunit.RequestStatistics
+ * request statistics} in <code>request-stats</code>. For every test the result, the
+ * duration and the time spent waiting for responses in each variant are written to
+ * <code>report.csv</code> and <code>report.md</code> in the matrix directory, and the
+ * totals per variant and the tests whose result depends on the variant are printed.
+ * </p>
+ */
+public final class MatrixReport {
+
+    private static final String PASSED = "passed";
+
+    private final Path dir;
+
+    private final List<String> variants = new ArrayList<>();
+
+    // by test, then variant
+    private final Map<String, Map<String, Result>> results = new TreeMap<>();
+
+    private MatrixReport(Path dir) {
+        this.dir = dir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "target/matrix");
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        MatrixReport report = new MatrixReport(dir);
+        report.read();
+        if (!report.results.isEmpty()) {
+            report.write();
+        }
+    }
+
+    private void read() throws Exception {
+        try (DirectoryStream<Path> variantDirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path variantDir : variantDirs) {
+                variants.add(variantDir.getFileName().toString());
+            }
+        }
+        variants.sort(null);
+
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        for (String variant : variants) {
+            Path reports = dir.resolve(variant).resolve("failsafe-reports");
+            if (Files.isDirectory(reports)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(reports, "TEST-*.xml")) {
+                    for (Path file : files) {
+                        readTestResults(variant, builder.parse(file.toFile()).getElementsByTagName("testcase"));
+                    }
+                }
+            }
+
+            Path stats = dir.resolve(variant).resolve("request-stats");
+            if (Files.isDirectory(stats)) {
+                // one file per fork
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(stats, "tests*.csv")) {
+                    for (Path file : files) {
+                        readRequestStatistics(variant, file);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readTestResults(String variant, NodeList testCases) {
+        for (int i = 0; i < testCases.getLength(); i++) {
+            Element testCase = (Element) testCases.item(i);
+            String status = PASSED;
+            if (testCase.getElementsByTagName("failure").getLength() > 0) {
+                status = "failed";
+            } else if (testCase.getElementsByTagName("error").getLength() > 0) {
+                status = "error";
+            } else if (testCase.getElementsByTagName("skipped").getLength() > 0) {
+                status = "skipped";
+            }
+
+            Result result = result(testCase.getAttribute("classname") + '#' + testCase.getAttribute("name"), variant);
+            result.status = status;
+            try {
+                result.millis = Math.round(Double.parseDouble(testCase.getAttribute("time").replace(",", "")) * 1000);
+            } catch (NumberFormatException e) {
+                // the duration is left out
+            }
+        }
+    }
+
+    private void readRequestStatistics(String variant, Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, UTF_8);
+        // test,requests,partialRequests,latencyMillis,slowestMillis,responseBytes,jsMillis
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            List<String> columns = parseCsv(line);
+            if (columns.size() < 7 || columns.get(0).isEmpty()) {
+                continue;
+            }
+            Result result = result(columns.get(0), variant);
+            result.requests += Long.parseLong(columns.get(1));
+            result.latencyMillis += Long.parseLong(columns.get(3));
+            result.jsMillis += Long.parseLong(columns.get(6));
+        }
+    }
+
+    private Result result(String test, String variant) {
+        return results.computeIfAbsent(test, key -> new TreeMap<>()).computeIfAbsent(variant, key -> new Result());
+    }
+
+    private void write() {
+        List<String> differing = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Result>> test : results.entrySet()) {
+            if (test.getValue().values().stream().map(result -> result.status).distinct().count() > 1
+                    || test.getValue().size() < variants.size()) {
+                differing.add(test.getKey());
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("report.csv"), UTF_8))) {
+            out.print("test");
+            for (String variant : variants) {
+                out.print("," + variant + " result," + variant + " millis," + variant + " requests," + variant + " latencyMillis," + variant
+                        + " jsMillis");
+            }
+            out.println();
+            for (Map.Entry<String, Map<String, Result>> test : results.entrySet()) {
+                out.print(csv(test.getKey()));
+                for (String variant : variants) {
+                    Result result = test.getValue().getOrDefault(variant, Result.MISSING);
+                    out.print(',' + result.status + ',' + result.millis + ',' + result.requests + ',' + result.latencyMillis + ','
+                            + result.jsMillis);
+                }
+                out.println();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the matrix report to " + dir, e);
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append("| variant | tests | passed | failed | errors | skipped | test time (ms) | requests | response time (ms) | ms/request |\n");
+        summary.append("|---|---:|---:|---:|---:|---:|---:|---:|---:|---:|\n");
+        for (String variant : variants) {
+            long[] totals = new long[8];
+            for (Map<String, Result> test : results.values()) {
+                Result result = test.get(variant);
+                if (result == null) {
+                    continue;
+                }
+                totals[0]++;
+                totals[PASSED.equals(result.status) ? 1 : "failed".equals(result.status) ? 2 : "error".equals(result.status) ? 3 : 4]++;
+                totals[5] += result.millis;
+                totals[6] += result.requests;
+                totals[7] += result.latencyMillis;
+            }
+            summary.append("| ").append(variant);
+            for (long total : totals) {
+                summary.append(" | ").append(total);
+            }
+            summary.append(" | ").append(totals[6] == 0 ? "-" : String.format("%.1f", (double) totals[7] / totals[6])).append(" |\n");
+        }
+
+        if (differing.isEmpty()) {
+            summary.append("\nAll tests have the same result in every variant.\n");
+        } else {
+            summary.append("\nTests with a different result per variant:\n\n| test |");
+            variants.forEach(variant -> summary.append(' ').append(variant).append(" |"));
+            summary.append("\n|---|");
+            variants.forEach(variant -> summary.append("---|"));
+            summary.append('\n');
+            for (String test : differing) {
+                summary.append("| ").append(test).append(" |");
+                for (String variant : variants) {
+                    summary.append(' ').append(results.get(test).getOrDefault(variant, Result.MISSING).status).append(" |");
+                }
+                summary.append('\n');
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("report.md"), UTF_8))) {
+            out.println("# Configuration matrix");
+            out.println();
+            out.print(summary);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the matrix report to " + dir, e);
+        }
+        System.out.print("[MatrixReport] " + dir.toAbsolutePath() + "\n" + summary);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static List<String> parseCsv(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static final class Result {
+
+        static final Result MISSING = new Result("missing");
+
+        String status;
+
+        long millis;
+
+        long requests;
+
+        long latencyMillis;
+
+        long jsMillis;
+
+        Result() {
+            this("not run");
+        }
+
+        Result(String status) {
+            this.status = status;
+        }
+    }
+}
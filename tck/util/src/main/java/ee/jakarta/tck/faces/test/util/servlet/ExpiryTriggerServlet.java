@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2022 Contributors to Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package ee.jakarta.tck.faces.test.util.servlet;
+
+import static java.util.Collections.list;
+
+import java.io.IOException;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Expires the session of the client on command, so that tests of session and view
+ * expiry don't have to wait for a timeout.
+ *
+ * <p>
+ * The servlet is added to the deployments of the test classes annotated with
+ * {@link ee.jakarta.tck.faces.test.util.arquillian.ExpiryTrigger}, which request it with
+ * the cookies of their web client:
+ * </p>
+ * <ul>
+ * <li><code>?expire=session</code> invalidates the session, as its timeout would</li>
+ * <li><code>?expire=views</code> removes all session attributes, and with them the views
+ * stored in the session, but keeps the session</li>
+ * </ul>
+ * <p>
+ * The response is <code>expired</code>, or <code>no session</code> if the client has no
+ * session.
+ * </p>
+ */
+@WebServlet(ExpiryTriggerServlet.PATH)
+public class ExpiryTriggerServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The path of the servlet below the context root.
+     */
+    public static final String PATH = "/faces-tck-expiry";
+
+    public static final String SESSION = "session";
+
+    public static final String VIEWS = "views";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String expire = request.getParameter("expire");
+        if (!SESSION.equals(expire) && !VIEWS.equals(expire)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "expire must be " + SESSION + " or " + VIEWS);
+            return;
+        }
+
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            if (SESSION.equals(expire)) {
+                session.invalidate();
+            } else {
+                for (String name : list(session.getAttributeNames())) {
+                    session.removeAttribute(name);
+                }
+            }
+        }
+
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().print(session == null ? "no session" : "expired");
+    }
+}